@@ -27,6 +27,8 @@ public class CommandLineOptions {
 	public int timeoutMin = DEFAULT_TIMEOUT;
 	public int max_update_tran_sec = 0;
 	public int max_writes_per_tran = 0;
+	public boolean group_commit = false;
+	public int server_threads = 0;
 	public boolean unattended = false;
 
 	public static CommandLineOptions parse(String... args) {
@@ -102,6 +104,10 @@ public class CommandLineOptions {
 				max_update_tran_sec = getIntArg();
 			else if (arg.equals("-mw"))
 				max_writes_per_tran = getIntArg();
+			else if (arg.equals("-gc"))
+				group_commit = true;
+			else if (arg.equals("-threads"))
+				server_threads = getIntArg();
 			else if (arg.equals("-unattended") || arg.equals("-u"))
 				unattended = true;
 			else
@@ -42,7 +42,7 @@ public class SuObject extends SuValue
 	public final static SuObject EMPTY = empty();
 
 	@SuppressWarnings("serial")
-	private static class CanonicalMap extends HashMap<Object, Object> {
+	static class CanonicalMap extends HashMap<Object, Object> {
 		@Override
 		public Object get(Object key) {
 			return super.get(canonical(key));
@@ -89,6 +89,11 @@ public class SuObject extends SuValue
 		this(vec, new CanonicalMap());
 	}
 
+	/** used by SuRecord to supply a map that decodes fields lazily */
+	SuObject(CanonicalMap map) {
+		this(new ArrayList<>(), map);
+	}
+
 	private SuObject(List<Object> vec, Map<Object,Object> map) {
 		this.vec = vec;
 		this.map = map;
@@ -34,12 +34,15 @@ public class SuRecord extends SuObject {
 	enum Status { NEW, OLD, DELETED }
 
 	private Status status;
-	private final List<Object> observers = Lists.newArrayList();
-	private final Set<Object> invalid; // used by rules
-	private final SetMultimap<Object, Object> dependencies;
-	private final Deque<Object> activeRules = new ArrayDeque<>();
-	private final Set<Object> invalidated = Sets.newLinkedHashSet(); // for observers
-	private final Map<Object, Object> attachedRules = Maps.newHashMap();
+	/** null if the fields are not from the database */
+	private final Fields fields;
+	// the following are only allocated when used (most records don't use them)
+	private List<Object> observers;
+	private Set<Object> invalid; // used by rules
+	private SetMultimap<Object, Object> dependencies;
+	private Deque<Object> activeRules;
+	private Set<Object> invalidated; // for observers
+	private Map<Object, Object> attachedRules;
 
 	{ defval = ""; }
 
@@ -48,8 +51,7 @@ public class SuRecord extends SuObject {
 		tran = null;
 		recadr = 0;
 		status = Status.NEW;
-		invalid = Sets.newHashSet();
-		dependencies = HashMultimap.create();
+		fields = null;
 	}
 
 	public SuRecord(SuRecord r) {
@@ -58,8 +60,11 @@ public class SuRecord extends SuObject {
 		tran = null;
 		recadr = 0;
 		status = r.status;
-		invalid = Sets.newHashSet(r.invalid);
-		dependencies = HashMultimap.create(r.dependencies);
+		fields = null;
+		if (r.invalid != null)
+			invalid = Sets.newHashSet(r.invalid);
+		if (r.dependencies != null)
+			dependencies = HashMultimap.create(r.dependencies);
 	}
 
 	public SuRecord(Row row, Header hdr) {
@@ -70,14 +75,9 @@ public class SuRecord extends SuObject {
 		this(row, hdr, tran == null ? null : new SuTransaction(tran));
 	}
 
+	/** used for query results, the fields are unpacked as they are used */
 	public SuRecord(Row row, Header hdr, SuTransaction tran) {
-		this.hdr = hdr;
-		this.tran = tran;
-		this.recadr = row.address();
-		status = Status.OLD;
-		invalid = Sets.newHashSet();
-		dependencies = HashMultimap.create();
-
+		this(new Fields(), hdr, tran, row.address());
 		for (Iterator<Row.Entry> iter = row.iterator(hdr); iter.hasNext();) {
 			Row.Entry e = iter.next();
 			if (! isSpecialField(e.field))
@@ -85,18 +85,23 @@ public class SuRecord extends SuObject {
 		}
 	}
 
+	/** used for triggers, the fields are unpacked as they are used */
 	public SuRecord(Record rec, List<String> flds, SuTransaction tran) {
-		hdr = null;
-		this.tran = tran;
-		recadr = 0;
-		status = Status.OLD;
-		invalid = Sets.newHashSet();
-		dependencies = HashMultimap.create();
+		this(new Fields(), null, tran, 0);
 		int i = 0;
 		for (String field : flds)
 			addField(field, rec.getRaw(i++));
 	}
 
+	private SuRecord(Fields fields, Header hdr, SuTransaction tran, int recadr) {
+		super(fields);
+		this.fields = fields;
+		this.hdr = hdr;
+		this.tran = tran;
+		this.recadr = recadr;
+		status = Status.OLD;
+	}
+
 	public synchronized void clear() {
 		super.deleteAll();
 		hdr = null;
@@ -108,11 +113,10 @@ public class SuRecord extends SuObject {
 	private void addField(String field, ByteBuffer buf) {
 		if (field.equals("-") || buf.remaining() == 0)
 			return;
-		Object x = Pack.unpack(buf);
 		if (field.endsWith("_deps"))
-			dependencies(baseFieldName(field), (String) x);
+			dependencies(baseFieldName(field), (String) Pack.unpack(buf));
 		else
-			super.put(field, x);
+			fields.add(field, buf);
 	}
 
 	/** remove "_deps" suffix */
@@ -152,7 +156,8 @@ public class SuRecord extends SuObject {
 
 	@Override
 	public synchronized void put(Object key, Object value) {
-		invalid.remove(key); // before get
+		if (invalid != null)
+			invalid.remove(key); // before get
 		Object old = containsKey(key) ? super.get(key) : null;
 		super.put(key, value);
 		if (old != null && old.equals(value))
@@ -182,13 +187,19 @@ public class SuRecord extends SuObject {
 	}
 
 	private void invalidateDependents(Object key) {
+		if (dependencies == null)
+			return;
 		for (Object dep : dependencies.get(key))
 			invalidate1(dep);
 	}
 
 	private void invalidate1(Object member) {
-		if (invalid.contains(member))
+		if (invalid == null)
+			invalid = Sets.newHashSet();
+		else if (invalid.contains(member))
 			return;
+		if (invalidated == null)
+			invalidated = Sets.newLinkedHashSet();
 		invalidated.add(member); // for observers
 		invalid.add(member);
 		invalidateDependents(member);
@@ -196,7 +207,7 @@ public class SuRecord extends SuObject {
 
 	/** called by Suneido record.Invalidate */
 	public synchronized void invalidate(Object member) {
-		assert invalidated.isEmpty();
+		assert invalidated == null || invalidated.isEmpty();
 		invalidate1(member);
 		callObservers(member);
 	}
@@ -212,7 +223,7 @@ public class SuRecord extends SuObject {
 			addDependency(ar.member, key);
 
 		Object result = getIfPresent(key);
-		if (result == null || invalid.contains(key)) {
+		if (result == null || (invalid != null && invalid.contains(key))) {
 			Object x = getIfSpecial(key);
 			if (x != null)
 				return x;
@@ -243,21 +254,26 @@ public class SuRecord extends SuObject {
 	}
 
 	private void addDependency(Object src, Object dst) {
+		if (dependencies == null)
+			dependencies = HashMultimap.create();
 		dependencies.put(dst, src);
 	}
 
 	private Object callRule(Object k) {
-		invalid.remove(k);
+		if (invalid != null)
+			invalid.remove(k);
 		if (! Ops.isString(k))
 			return null;
 		String key = Ops.toStr(k);
-		Object rule = attachedRules.get(key);
+		Object rule = attachedRules == null ? null : attachedRules.get(key);
 		if (rule == null && defval != null)
 			rule = Suneido.context.tryget("Rule_" + key);
 		if (rule == null)
 			return null;
 		// prevent cycles
-		if (activeRules.contains(key))
+		if (activeRules == null)
+			activeRules = new ArrayDeque<>();
+		else if (activeRules.contains(key))
 			return null;
 		activeRules.push(key);
 		try {
@@ -314,6 +330,8 @@ public class SuRecord extends SuObject {
 				get(f);
 		// invert dependencies
 		Map<Object, Set<Object>> deps = new HashMap<>();
+		if (dependencies == null)
+			return deps;
 		for (Object key : dependencies.keySet())
 			for (Object x : dependencies.get(key)) {
 				String d = x + "_deps";
@@ -364,11 +382,14 @@ public class SuRecord extends SuObject {
 	}
 
 	public synchronized void addObserver(Object observer) {
+		if (observers == null)
+			observers = Lists.newArrayList();
 		observers.add(observer);
 	}
 
 	public synchronized void removeObserver(Object observer) {
-		observers.remove(observer);
+		if (observers != null)
+			observers.remove(observer);
 	}
 
 	private static class ActiveObserver {
@@ -406,6 +427,8 @@ public class SuRecord extends SuObject {
 	 */
 	public synchronized void callObservers(Object member) {
 		callObservers2(member);
+		if (invalidated == null)
+			return;
 		invalidated.remove(member);
 		// can't iterate normally because of potential concurrent modification
 		while (! invalidated.isEmpty()) {
@@ -418,6 +441,8 @@ public class SuRecord extends SuObject {
 
 	/** Call all the observers for a particular field */
 	private void callObservers2(Object member) {
+		if (observers == null)
+			return;
 		List<ActiveObserver> aos = activeObservers.get();
 		for (Object observer : observers) {
 			ActiveObserver ao = new ActiveObserver(observer, member);
@@ -441,6 +466,8 @@ public class SuRecord extends SuObject {
 
 	public synchronized String getdeps(String field) {
 		CommaStringBuilder deps = new CommaStringBuilder();
+		if (dependencies == null)
+			return "";
 		for (Object key : dependencies.keySet())
 			if (dependencies.get(key).contains(field))
 				deps.add(key);
@@ -461,7 +488,157 @@ public class SuRecord extends SuObject {
 	}
 
 	public synchronized void attachRule(String field, Object rule) {
+		if (attachedRules == null)
+			attachedRules = Maps.newHashMap();
 		attachedRules.put(field, rule);
 	}
 
+	/**
+	 * The fields of a record from the database.
+	 * Keeps the packed values (slices of the record buffers)
+	 * and only unpacks a field the first time it is accessed,
+	 * since code usually only uses a few of a table's columns.
+	 * Operations that need the whole map unpack all the remaining fields.
+	 */
+	@SuppressWarnings("serial")
+	private static class Fields extends SuObject.CanonicalMap {
+		private String[] names = new String[16];
+		private ByteBuffer[] packed = new ByteBuffer[16];
+		/** the number of names, including ones already unpacked (null) */
+		private int n = 0;
+		/** the number of fields still packed */
+		private int npacked = 0;
+
+		void add(String name, ByteBuffer buf) {
+			if (n >= names.length) {
+				names = Arrays.copyOf(names, 2 * n);
+				packed = Arrays.copyOf(packed, 2 * n);
+			}
+			names[n] = name;
+			packed[n++] = buf;
+			++npacked;
+		}
+
+		/** unpack a field if it is still packed, the last one wins */
+		private void unpack(Object key) {
+			if (npacked == 0)
+				return;
+			key = canonical(key);
+			if (! (key instanceof String))
+				return;
+			for (int i = n - 1; i >= 0; --i)
+				if (key.equals(names[i])) {
+					Object x = Pack.unpack(packed[i]);
+					discard(key);
+					super.put(key, x);
+					return;
+				}
+		}
+
+		/** forget a packed field, e.g. because it has been set */
+		private void discard(Object key) {
+			if (npacked == 0)
+				return;
+			key = canonical(key);
+			if (! (key instanceof String))
+				return;
+			for (int i = 0; i < n; ++i)
+				if (key.equals(names[i])) {
+					names[i] = null;
+					packed[i] = null;
+					--npacked;
+				}
+		}
+
+		private void unpackAll() {
+			if (npacked == 0)
+				return;
+			for (int i = 0; i < n; ++i)
+				if (names[i] != null)
+					super.put(names[i], Pack.unpack(packed[i]));
+			names = null;
+			packed = null;
+			n = npacked = 0;
+		}
+
+		@Override
+		public Object get(Object key) {
+			unpack(key);
+			return super.get(key);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			unpack(key);
+			return super.containsKey(key);
+		}
+
+		@Override
+		public Object put(Object key, Object value) {
+			discard(key);
+			return super.put(key, value);
+		}
+
+		@Override
+		public Object remove(Object key) {
+			unpack(key);
+			return super.remove(key);
+		}
+
+		@Override
+		public void putAll(Map<? extends Object, ? extends Object> m) {
+			unpackAll();
+			super.putAll(m);
+		}
+
+		@Override
+		public void clear() {
+			names = null;
+			packed = null;
+			n = npacked = 0;
+			super.clear();
+		}
+
+		@Override
+		public int size() {
+			unpackAll();
+			return super.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return npacked == 0 && super.isEmpty();
+		}
+
+		@Override
+		public Set<Map.Entry<Object, Object>> entrySet() {
+			unpackAll();
+			return super.entrySet();
+		}
+
+		@Override
+		public Set<Object> keySet() {
+			unpackAll();
+			return super.keySet();
+		}
+
+		@Override
+		public Collection<Object> values() {
+			unpackAll();
+			return super.values();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			unpackAll();
+			return super.equals(other);
+		}
+
+		@Override
+		public int hashCode() {
+			unpackAll();
+			return super.hashCode();
+		}
+	}
+
 }
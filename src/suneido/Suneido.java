@@ -59,6 +59,8 @@ public class Suneido {
 			Dbpkg.setOption("max_update_tran_sec", cmdlineoptions.max_update_tran_sec);
 		if (cmdlineoptions.max_writes_per_tran != 0)
 			Dbpkg.setOption("max_writes_per_tran", cmdlineoptions.max_writes_per_tran);
+		if (cmdlineoptions.group_commit)
+			Dbpkg.setOption("group_commit", true);
 		try {
 			doAction();
 		} catch (Throwable e) {
@@ -147,7 +149,8 @@ public class Suneido {
 		scheduleAtFixedRate(Deadlock::check, 5, TimeUnit.MINUTES);
 		HttpServerMonitor.run(cmdlineoptions.serverPort + 1);
 		openDbms();
-		server = new DbmsServer(cmdlineoptions.timeoutMin);
+		server = new DbmsServer(cmdlineoptions.timeoutMin,
+				cmdlineoptions.server_threads);
 		server.open(cmdlineoptions.serverPort);
 		try {
 			Compiler.eval("Init()");
@@ -159,7 +162,7 @@ public class Suneido {
 		server.serve();
 	}
 
-	private static Database db;
+	private static volatile Database db;
 
 	public static void openDbms() {
 		db = Dbpkg.open(Dbpkg.DB_FILENAME);
@@ -178,8 +181,15 @@ public class Suneido {
 			Suneido.db.close();
 			Errlog.info("database closed");
 		}));
-		scheduleAtFixedRate(db::limitOutstandingTransactions, 1, TimeUnit.SECONDS);
-		scheduleAtFixedRate(db::force, 1, TimeUnit.MINUTES);
+		// not db::force since db may be replaced by setDb
+		scheduleAtFixedRate(() -> db.limitOutstandingTransactions(), 1, TimeUnit.SECONDS);
+		scheduleAtFixedRate(() -> db.force(), 1, TimeUnit.MINUTES);
+	}
+
+	/** Used by online compaction to switch to the new database */
+	public static void setDb(Database newdb) {
+		db = newdb;
+		TheDbms.set(newdb);
 	}
 
 	private static void tryToCloseMemoryMappings() {
@@ -206,6 +216,8 @@ public class Suneido {
 		System.out.println("-t[ime]o[ut] #            time out in minutes for idle clients (default is 240)");
 		System.out.println("-ut #                     set max update tran duration in seconds (default 10)");
 		System.out.println("-mw #                     set max writes per update transaction (default 10000)");
+		System.out.println("-gc                       group concurrent update transaction commits");
+		System.out.println("-threads #                number of server request threads (default 8 per core, min 32)");
 		System.out.println("-u[nattended]             redirect stdout and stderr to output.log and error.log");
 		System.out.println("-dbdump                   output database structure (for debugging)");
 		System.out.println("-h[elp] or -?             print this message");
@@ -21,7 +21,7 @@ public class TheDbms {
 	private static final long IDLE_TIMEOUT_MS = 5 * 60 * 1000; // 5 min
 	private static String ip = null;
 	private static int port = 0;
-	private static DbmsLocal localDbms;
+	private static volatile DbmsLocal localDbms;
 	private static final ThreadLocal<DbmsClient> remoteDbms = new ThreadLocal<>();
 	private static final Set<DbmsClient> dbmsRemotes =
 			Collections.synchronizedSet(new HashSet<DbmsClient>());
@@ -922,14 +922,17 @@ public class AstCompile {
 		if (fn.token == Token.MEMBER) {
 			if ("New".equals(fn.strval()))
 				throw new SuException("can't explicitly call New method");
-			member(cg, fn);
 			if (args.token != Token.AT
 					&& args.children.size() <= MAX_DIRECT_ARGS
 					&& !hasNamed(args)) {
+				expression(cg, fn.first());
+				putLineNumber(cg, fn);
 				directArguments(cg, args);
 				putLineNumber(cg, ast);
-				cg.invokeMethod(args.children.size());
+				cg.invokeMethod(privatizeRef(fn.first(), fn.strval()),
+						args.children.size());
 			} else {
+				member(cg, fn);
 				callArguments(cg, args);
 				putLineNumber(cg, ast);
 				cg.invokeMethod();
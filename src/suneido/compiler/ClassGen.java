@@ -47,6 +47,11 @@ public class ClassGen {
 	private static final String BLOCK_FLOW_EXCEPTION_INTERNAL_NAME = Type.getInternalName(BlockFlowException.class);
 	private static final String BLOCK_FLOW_EXCEPTION_DESCRIPTOR = Type.getDescriptor(BlockFlowException.class);
 	private static final String SUCALLABLE_INTERNAL_NAME = Type.getInternalName(SuCallable.class);
+	private static final Handle INLINE_CACHE_BOOTSTRAP = new Handle(H_INVOKESTATIC,
+			Type.getInternalName(InlineCache.class), "bootstrap",
+			"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;"
+			+ "Ljava/lang/invoke/MethodType;Ljava/lang/String;)Ljava/lang/invoke/CallSite;",
+			false);
 	private static final int THIS = 0;
 	private int SELF = -1;
 	private int ARGS = -2;
@@ -136,7 +141,7 @@ public class ClassGen {
 		if (pw != null)
 			cv = new TraceClassVisitor(cw, pw);
 		cv = new CheckClassAdapter(cv, false);
-		cv.visit(V1_5, ACC_PUBLIC + ACC_SUPER, className, null, base, null);
+		cv.visit(V1_7, ACC_PUBLIC + ACC_SUPER, className, null, base, null);
 		cv.visitSource(sourceFile, null);
 		return cv;
 	}
@@ -467,6 +472,13 @@ public class ClassGen {
 			false);
 	}
 
+	/** method call with a constant name, via an {@link InlineCache} */
+	void invokeMethod(String method, int nargs) {
+		mv.visitInvokeDynamicInsn("invoke",
+				"(Ljava/lang/Object;" + directArgs[nargs] + ")Ljava/lang/Object;",
+				INLINE_CACHE_BOOTSTRAP, method);
+	}
+
 	private static final int MAX_DIRECT_ARGS = 11;
 	private static final String[] directArgs = new String[MAX_DIRECT_ARGS];
 	static {
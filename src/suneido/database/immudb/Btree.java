@@ -63,6 +63,17 @@ class Btree implements TranIndex {
 		return treeLevels == 0 && rootNode.isEmpty();
 	}
 
+	/** Used by {@link BtreeBuilder} to set the contents of an empty btree */
+	void setRoot(BtreeNode root, int treeLevels, int nnodes, int totalSize) {
+		assert isEmpty();
+		assert root.level == treeLevels;
+		this.rootNode = root;
+		this.treeLevels = treeLevels;
+		this.nnodes = nnodes;
+		this.totalSize = totalSize;
+		++modified;
+	}
+
 	// get ---------------------------------------------------------------------
 
 	/**
@@ -604,7 +615,7 @@ class Btree implements TranIndex {
 	}
 
 	static BtreeNode nodeAt(Storage stor, int level, int adr) {
-		return new BtreeDbNode(level, stor.buffer(adr), adr);
+		return BtreeNodeCache.get(stor, level, adr);
 	}
 
 	void freeze() {
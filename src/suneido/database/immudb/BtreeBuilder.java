@@ -0,0 +1,174 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.immudb;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import suneido.database.query.ExternalSort;
+import suneido.util.BlockList;
+
+/**
+ * Builds a new btree bottom up, used by {@link DbLoad} createIndex
+ * (and therefore by DbCompact and DbRebuild).
+ * <p>
+ * Keys can be added in any order.
+ * They are sorted with {@link ExternalSort} (so they do not have to fit in memory)
+ * and then full leaf and tree nodes are stored directly to the index storage.
+ * This avoids the repeated splits and path copying of adding one key at a time,
+ * and leaves nodes full instead of half full.
+ * <p>
+ * The root node is not stored,
+ * it is left in the btree to be stored by Persist as usual.
+ * Separators are the same as Btree split would produce.
+ * <p>
+ * If the btree is not empty (e.g. bulk loading into an existing table)
+ * the sorted keys are just added to it.
+ */
+class BtreeBuilder {
+	private final Btree btree;
+	private final Storage stor;
+	private final int nodeSize;
+	private final boolean empty;
+	private final ExternalSort sorter;
+	private int nfields = -1;
+	/** the keys of the node being built at each level, 0 is the leaves */
+	private final List<List<BtreeKey>> levels = new ArrayList<>();
+	/** the separator for the current leaf node */
+	private BtreeKey leafSep = BtreeKey.EMPTY;
+	private int nnodes = 0;
+	private int totalSize = 0;
+
+	BtreeBuilder(Btree btree) {
+		this(btree, ExternalSort.memoryLimit());
+	}
+
+	/** @param memoryLimit The heap memory to use for sorting before spilling */
+	BtreeBuilder(Btree btree, long memoryLimit) {
+		this.sorter = new ExternalSort(memoryLimit);
+		this.btree = btree;
+		this.empty = btree.isEmpty();
+		this.stor = btree.tran.istor;
+		this.nodeSize = btree.splitSize();
+	}
+
+	/** Add a key, in any order */
+	void add(BtreeKey key) {
+		assert nfields == -1 || key.key.size() == nfields;
+		nfields = key.key.size();
+		sorter.add(sortKey(key));
+	}
+
+	/** Sort the keys, store the nodes, and set the root of the btree */
+	void finish() {
+		try {
+			sort();
+			build();
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Sort the keys.
+	 * This does not write to the database so builders can sort in parallel.
+	 */
+	void sort() {
+		sorter.sort();
+	}
+
+	/**
+	 * Store the nodes and set the root of the btree.
+	 * This writes to the database so it must be single threaded.
+	 */
+	void build() {
+		levels.add(new ArrayList<>());
+		try {
+			RecordStore keys = sorter.stor();
+			BlockList index = sorter.index();
+			for (int i = 0; i < index.size(); ++i) {
+				BtreeKey key = btreeKey(keys.get(index.get(i)));
+				if (empty)
+					addLeaf(key);
+				else
+					btree.add(key, false);
+			}
+		} finally {
+			close();
+		}
+		if (! empty)
+			return;
+		for (int level = 0; level < levels.size() - 1; ++level)
+			store(level, level == 0 ? leafSep : levels.get(level).get(0));
+		int treeLevels = levels.size() - 1;
+		List<BtreeKey> keys = levels.get(treeLevels);
+		BtreeNode root = (treeLevels == 0 && keys.isEmpty())
+				? BtreeNode.emptyLeaf() : node(treeLevels, keys);
+		btree.setRoot(root, treeLevels, nnodes + 1, totalSize);
+	}
+
+	/** Release the temporary file (if any) e.g. on failure */
+	void close() {
+		sorter.close();
+	}
+
+	/**
+	 * The key record with the data address as an additional field,
+	 * so it sorts the same as BtreeKey compareTo
+	 */
+	private static Record sortKey(BtreeKey key) {
+		ByteBuffer adr = ByteBuffer.allocate(Integer.BYTES);
+		adr.putInt(0, key.adr());
+		return new RecordBuilder().addAll(key.key).add(adr).bufRec();
+	}
+
+	private BtreeKey btreeKey(Record rec) {
+		int adr = rec.fieldBuffer(nfields).getInt(rec.fieldOffset(nfields));
+		return new RecordBuilder().addPrefix(rec, nfields).btreeKey(adr);
+	}
+
+	private void addLeaf(BtreeKey key) {
+		List<BtreeKey> leaf = levels.get(0);
+		if (leaf.size() >= nodeSize) {
+			BtreeKey last = leaf.get(leaf.size() - 1);
+			store(0, leafSep);
+			leafSep = separator(last, key);
+		}
+		totalSize += key.keySize();
+		leaf.add(key);
+	}
+
+	/** the same as Btree split */
+	private static BtreeKey separator(BtreeKey last, BtreeKey first) {
+		return last.key.equals(first.key)
+				? last : new BtreeKey(last.key, IntRefs.MAXADR);
+	}
+
+	private void addTree(int level, BtreeTreeKey key) {
+		if (level >= levels.size())
+			levels.add(new ArrayList<>());
+		List<BtreeKey> keys = levels.get(level);
+		if (keys.size() >= nodeSize)
+			store(level, keys.get(0));
+		keys.add(key);
+	}
+
+	/** store the node for a level and add a key for it to the parent */
+	private void store(int level, BtreeKey sep) {
+		List<BtreeKey> keys = levels.get(level);
+		int adr = node(level, keys).store(stor).address();
+		++nnodes;
+		keys.clear();
+		addTree(level + 1, new BtreeTreeKey(sep.key, sep.adr(), adr));
+	}
+
+	private static BtreeMemNode node(int level, List<BtreeKey> keys) {
+		if (level > 0)
+			keys.set(0, keys.get(0).minimize());
+		return BtreeMemNode.from(level, keys.toArray(new BtreeKey[0]));
+	}
+
+}
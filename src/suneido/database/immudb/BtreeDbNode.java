@@ -6,17 +6,15 @@ package suneido.database.immudb;
 
 import static com.google.common.base.Preconditions.checkElementIndex;
 
-import java.lang.ref.SoftReference;
 import java.nio.ByteBuffer;
 
 /**
  * A {@link BtreeNode} wrapping a ByteBuffer from the database.
  * "updating" a BtreeDbNode produces a {@link BtreeMemNode}
- * Immutable except for refs.
+ * Immutable, so instances are shared via {@link BtreeNodeCache}
  */
 class BtreeDbNode extends BtreeNode {
 	final Record rec;
-	private SoftReference<BtreeDbNode>[] refs = null; // cache child nodes
 
 	BtreeDbNode(int level, ByteBuffer buf, int adr) {
 		super(level);
@@ -30,11 +28,7 @@ class BtreeDbNode extends BtreeNode {
 		int pos = rec.fieldOffset(i);
 		return isLeaf()
 				? BtreeKey.unpack(buf, pos)
-				: BtreeTreeKey.unpack(buf, pos, ref(i));
-	}
-
-	protected BtreeDbNode ref(int i) {
-		return refs == null || refs[i] == null ? null : refs[i].get();
+				: BtreeTreeKey.unpack(buf, pos, null);
 	}
 
 	@Override
@@ -97,17 +91,9 @@ class BtreeDbNode extends BtreeNode {
 	}
 
 	@Override
-	@SuppressWarnings("unchecked")
 	BtreeDbNode childNode(Storage stor, int i) {
-		BtreeDbNode ref = ref(i);
-		if (ref != null)
-			return ref;
 		int childAdr = ((BtreeTreeKey) get(i)).childAddress();
-		BtreeDbNode child = (BtreeDbNode) Btree.nodeAt(stor, level - 1, childAdr);
-		if (refs == null)
-			refs = new SoftReference[rec.size()];
-		refs[i]  = new SoftReference<>(child); // cache
-		return child;
+		return BtreeNodeCache.get(stor, level - 1, childAdr);
 	}
 
 	@Override
@@ -172,7 +172,7 @@ class BtreeMemNode extends BtreeNode {
 		if (idx < 0)
 			return ((BtreeTreeKey) get(i)).child();
 		else
-			return dbnode.ref(idx);
+			return null; // children of db nodes are never updated in place
 	}
 
 	private void update(int i, BtreeKey key) {
@@ -253,6 +253,10 @@ class BtreeMemNode extends BtreeNode {
 
 	@Override
 	BtreeDbNode store(Storage stor) {
+		if (address != 0)
+			// already stored by an earlier persist
+			// that ran concurrently with the commit that shares this node
+			return BtreeNodeCache.get(stor, level, address);
 		if (isTree())
 			storeChildren(stor);
 		address = stor.alloc(length());
@@ -260,6 +264,44 @@ class BtreeMemNode extends BtreeNode {
 		pack(buf);
 		BtreeDbNode node = new BtreeDbNode(level, buf, address);
 		assert node.address() == address;
+		BtreeNodeCache.put(stor, node);
+		return node;
+	}
+
+	/**
+	 * Used by Persist for btrees that were modified while persisting.
+	 * References to children that have been stored are replaced
+	 * by their addresses so their memory nodes can be released.
+	 * This node is frozen, so it is copied rather than modified.
+	 * @return This node if no children have been stored,
+	 * otherwise a new frozen node
+	 */
+	BtreeMemNode withoutStored() {
+		assert immutable;
+		if (isLeaf())
+			return this;
+		BtreeMemNode node = this;
+		for (int i = 0; i < size(); ++i) {
+			int idx = index.get(i);
+			if (idx >= 0)
+				continue;
+			BtreeTreeKey key = (BtreeTreeKey) added.get(-idx - 1);
+			if (! (key.child() instanceof BtreeMemNode))
+				continue;
+			BtreeMemNode child = (BtreeMemNode) key.child();
+			if (child.address != 0)
+				key = key.withoutChild();
+			else {
+				BtreeMemNode child2 = child.withoutStored();
+				if (child2 == child)
+					continue;
+				key = key.withChild(child2);
+			}
+			if (node == this)
+				node = new BtreeMemNode(this);
+			node.update(i, key);
+		}
+		node.freeze();
 		return node;
 	}
 
@@ -0,0 +1,76 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.immudb;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import suneido.util.ThreadSafe;
+
+/**
+ * Process wide cache of {@link BtreeDbNode}'s shared by all transactions.
+ * Keyed by storage and address.
+ * Stored nodes are immutable so entries never need to be invalidated,
+ * except to free up memory when a storage is closed.
+ * Bounded by number of nodes, least recently used are evicted.
+ * <p>
+ * Capacity can be set with Dbpkg.setOption("btree_node_cache_size", n)
+ * Statistics are available from Database.nodeCacheStats
+ */
+@ThreadSafe
+class BtreeNodeCache {
+	static final int DEFAULT_SIZE = 50_000;
+	private static volatile Cache<Long,BtreeDbNode> cache = build(DEFAULT_SIZE);
+
+	private static Cache<Long,BtreeDbNode> build(int size) {
+		return CacheBuilder.newBuilder()
+				.maximumSize(size)
+				.recordStats()
+				.build();
+	}
+
+	/** Replaces the cache, discarding its contents and statistics */
+	static void setSize(int size) {
+		cache = build(size);
+	}
+
+	/** @return The node stored at adr, from the cache if possible */
+	static BtreeDbNode get(Storage stor, int level, int adr) {
+		Long key = key(stor, adr);
+		Cache<Long,BtreeDbNode> c = cache; // read once
+		BtreeDbNode node = c.getIfPresent(key);
+		if (node == null) {
+			node = new BtreeDbNode(level, stor.buffer(adr), adr);
+			c.put(key, node);
+		}
+		assert node.level == level;
+		return node;
+	}
+
+	/** Used by BtreeMemNode.store to add newly stored nodes */
+	static void put(Storage stor, BtreeDbNode node) {
+		cache.put(key(stor, node.address()), node);
+	}
+
+	/** Remove all the nodes for a storage, called when it is closed */
+	static void invalidate(Storage stor) {
+		int id = stor.id;
+		cache.asMap().keySet().removeIf(k -> (int) (k >>> 32) == id);
+	}
+
+	private static Long key(Storage stor, int adr) {
+		return ((long) stor.id << 32) | (adr & 0xffffffffL);
+	}
+
+	static CacheStats stats() {
+		return cache.stats();
+	}
+
+	static long size() {
+		return cache.size();
+	}
+
+}
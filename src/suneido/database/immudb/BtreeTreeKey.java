@@ -46,6 +46,11 @@ class BtreeTreeKey extends BtreeKey {
 		return new BtreeTreeKey(key, dataAdr, 0, child);
 	}
 
+	/** Used by BtreeMemNode withoutStored once the child has been stored */
+	BtreeTreeKey withoutChild() {
+		return new BtreeTreeKey(key, dataAdr, childAddress(), null);
+	}
+
 	@Override
 	BtreeKey minimize() {
 		return new BtreeTreeKey(Record.EMPTY, 0, childAdr, child);
@@ -75,6 +75,15 @@ class BulkTransaction extends ReadWriteTransaction {
 		indexedData.clear();
 	}
 
+	/**
+	 * used by DbLoad createIndex,
+	 * the builder stores nodes so persist must be started first
+	 */
+	BtreeBuilder btreeBuilder(Index index, long sortMemory) {
+		ensurePersist();
+		return new BtreeBuilder((Btree) getIndex(index), sortMemory);
+	}
+
 	private void ensurePersist() {
 		if (persist != null)
 			return;
@@ -13,7 +13,7 @@ import java.util.Date;
 
 /**
  * Process the contents of a single data store commit
- * Used by @DbRebuild,
+ * Used by @DbRebuild, {@link DbCompact}
  */
 abstract class CommitProcessor {
 	protected final Storage stor;
@@ -7,9 +7,11 @@ package suneido.database.immudb;
 import java.io.File;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
 import com.google.common.base.MoreObjects;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
 
 import suneido.HttpServerMonitor;
@@ -32,9 +34,18 @@ public class Database implements AutoCloseable {
 	final Storage istor;
 	private final Triggers triggers = new Triggers();
 	private final ReentrantLock commit_lock = new ReentrantLock();
+	/** one persist at a time, acquired before the commit lock */
+	private final ReentrantLock persist_lock = new ReentrantLock();
+	final GroupCommit groupCommit = new GroupCommit(this);
 	/** only updated when holding commitLock */
 	volatile State state;
+	/** guarded by persist_lock */
 	private State lastPersistState;
+	/** the data size as of the last persist, see persistIfNeeded */
+	private volatile long persistedSize;
+	private final AtomicBoolean persistPending = new AtomicBoolean(false);
+	/** persist in the background after this much data has been committed */
+	static long PERSIST_SIZE = 16 * 1024 * 1024;
 	private boolean corrupt = false;
 	private enum Ck { CHECK, NOCHECK }
 
@@ -64,6 +75,7 @@ public class Database implements AutoCloseable {
 		this.dstor = dstor;
 		this.istor = istor;
 		state = lastPersistState = new State(0, dbinfo, schema, 0, 0);
+		persistedSize = dstor.sizeFrom(0);
 	}
 
 	// open
@@ -150,6 +162,7 @@ public class Database implements AutoCloseable {
 		state = new State(0, dbinfo, null, 0, 0); // enough to load schema
 		Tables schema = SchemaLoader.load(readTransaction(), maxTblnum);
 		state = lastPersistState = new State(dbinfoadr, dbinfo, schema, 0, 0);
+		persistedSize = dstor.sizeFrom(0);
 	}
 
 	static class DbinfoLoader implements DbHashTrie.Translator {
@@ -183,7 +196,7 @@ public class Database implements AutoCloseable {
 
 	public String check() {
 		UpTo upto = new UpTo();
-		withCommitLock(() -> {
+		withPersistAndCommitLock(() -> {
 			persist();
 			upto.d = dstor.upTo();
 			upto.i = istor.upTo();
@@ -213,15 +226,58 @@ public class Database implements AutoCloseable {
 		return new UpdateTransaction(num, this);
 	}
 
+	/**
+	 * Store the btrees and dbinfo changed since the last persist.
+	 * Commits can continue while this is storing, see {@link Persist}
+	 */
 	void persist() {
-		if (state == lastPersistState)
-			return;
-		Persist.persist(this);
+		persist_lock.lock();
+		try {
+			if (state != lastPersistState)
+				Persist.persist(this);
+		} finally {
+			persist_lock.unlock();
+		}
 	}
 
-	// called by Persist when it's finished
-	void setPersistState() {
-		lastPersistState = state;
+	/**
+	 * Called by Persist when it's finished
+	 * @param persisted The state that was stored,
+	 * not the current state if there were commits while storing
+	 * @param dataSize The data size as of persisted
+	 */
+	void setPersistState(State persisted, long dataSize) {
+		lastPersistState = persisted;
+		persistedSize = dataSize;
+	}
+
+	/**
+	 * Called after commits.
+	 * Starts a background persist if enough data has been committed
+	 * since the last one, so busy databases persist more often
+	 * and each persist has less to store.
+	 */
+	void persistIfNeeded() {
+		if (closed || dstor.sizeFrom(0) - persistedSize < PERSIST_SIZE ||
+				! persistPending.compareAndSet(false, true))
+			return;
+		Thread thread = new Thread(() -> {
+			try {
+				persist_lock.lock();
+				try {
+					if (! closed)
+						persist();
+				} finally {
+					persist_lock.unlock();
+				}
+			} catch (Throwable e) {
+				Errlog.error("background persist", e);
+			} finally {
+				persistPending.set(false);
+			}
+		}, "persist");
+		thread.setDaemon(true);
+		thread.start();
 	}
 
 	SchemaTransaction schemaTransaction() {
@@ -229,10 +285,26 @@ public class Database implements AutoCloseable {
 		return new SchemaTransaction(num, this);
 	}
 
+	/**
+	 * BulkTransaction stores index nodes itself,
+	 * so it must start from a persisted state
+	 * and no other persist can run while it's active
+	 * (it's exclusive so there won't be any commits to persist)
+	 */
 	BulkTransaction bulkTransaction() {
-		persist();
-		int num = trans.nextNum(false);
-		return new BulkTransaction(num, this);
+		while (true) {
+			persist();
+			int num = trans.nextNum(false);
+			BulkTransaction t = new BulkTransaction(num, this);
+			persist_lock.lock();
+			try {
+				if (t.dbstate == lastPersistState)
+					return t;
+			} finally {
+				persist_lock.unlock();
+			}
+			t.abort(); // a commit got in before it was exclusive
+		}
 	}
 
 	// schema updates ----------------------------------------------------------
@@ -314,11 +386,12 @@ public class Database implements AutoCloseable {
 			return;
 		closed = true;
 		long[] size = new long[1];
-		withCommitLock(() -> {
+		withPersistAndCommitLock(() -> {
 			persist();
 			size[0] = dstor.sizeFrom(0);
 			dstor.close();
 			istor.close();
+			BtreeNodeCache.invalidate(istor);
 		});
 		if (! corrupt && ! filename.equals(""))
 			DbGood.create(filename + "c", size[0]);
@@ -352,6 +425,11 @@ public class Database implements AutoCloseable {
 		return trans.finalSize();
 	}
 
+	/** @return The hit, miss, and eviction counts for the btree node cache */
+	public static CacheStats nodeCacheStats() {
+		return BtreeNodeCache.stats();
+	}
+
 	public void force() {
 		dstor.force();
 		persist();
@@ -411,6 +489,21 @@ public class Database implements AutoCloseable {
 		}
 	}
 
+	/**
+	 * Holds the persist lock as well as the commit lock,
+	 * for things like close that persist while holding the commit lock.
+	 * The persist lock must be acquired first
+	 * to avoid deadlock with a background persist.
+	 */
+	void withPersistAndCommitLock(Runnable fn) {
+		persist_lock.lock();
+		try {
+			withCommitLock(fn);
+		} finally {
+			persist_lock.unlock();
+		}
+	}
+
 	/** similar to try with resources */
 	void withCommitLock(Runnable fn) {
 		Throwable e0 = null;
@@ -432,6 +525,17 @@ public class Database implements AutoCloseable {
 		}
 	}
 
+	/**
+	 * Called holding the commit lock before storing a commit.
+	 * e.g. online compact closes the database
+	 * while transactions may still be outstanding or waiting for the lock
+	 */
+	void checkOpenForCommit() {
+		if (closed)
+			throw new SuException("can't commit, database was closed " +
+					"(e.g. compacted), retry the transaction");
+	}
+
 	private void commitLock() {
 		try {
 			if (!commit_lock.tryLock(30, TimeUnit.SECONDS))
@@ -5,33 +5,112 @@
 package suneido.database.immudb;
 
 import java.util.List;
+import java.util.function.Consumer;
 
+import gnu.trove.map.hash.TIntObjectHashMap;
+import suneido.SuException;
 import suneido.database.query.Request;
 
+/**
+ * Copies the current records of a database into a new database.
+ * <p>
+ * Online compaction copies a read transaction snapshot
+ * while the old database continues to be updated,
+ * then replays the commits since the snapshot from the old data file.
+ * The final replay and the switchover are done holding the commit lock.
+ */
 class DbCompact {
+	/** maximum number of catch up replays outside the commit lock */
+	private static final int CATCH_UP_ROUNDS = 10;
+	/** few enough commits to replay while holding the commit lock */
+	private static final int FINAL_COMMITS = 100;
 	private final Database oldDB;
 	private final Database newDB;
 	private ReadTransaction rt;
+	/** address of the last commit copied or replayed from the old database */
+	private int replayed;
+	/** fields of old tables whose replayed records need squeezing, else null */
+	private final TIntObjectHashMap<List<String>> squeezeFields =
+			new TIntObjectHashMap<>();
 
 	static int compact(Database olddb, Database newdb) {
-		return new DbCompact(olddb, newdb).compact();
+		return new DbCompact(olddb, newdb).copy();
 	}
 
-	private DbCompact(Database olddb, Database newdb) {
-		this.oldDB = olddb;
-		this.newDB = newdb;
+	/**
+	 * Compact while the old database is in use.
+	 * Only update commits can be replayed,
+	 * a schema change or bulk load during the compact makes it fail.
+	 * @param switchover Called holding the old database commit lock
+	 * once the new database is up to date
+	 */
+	static int compactOnline(Database olddb, Database newdb, Runnable switchover) {
+		DbCompact dc = new DbCompact(olddb, newdb);
+		try {
+			int n = dc.copy();
+			dc.catchUp();
+			dc.finish(switchover);
+			return n;
+		} finally {
+			dc.end(); // in case copy or catchUp failed
+		}
 	}
 
-	private int compact() {
-		return copy();
+	DbCompact(Database olddb, Database newdb) {
+		this.oldDB = olddb;
+		this.newDB = newdb;
 	}
 
-	private int copy() {
+	int copy() {
 		rt = oldDB.readTransaction();
+		replayed = rt.dbstate.lastadr;
 		copySchema();
 		return copyData() + 1; // + 1 for views
 	}
 
+	/** Replay commits, without locking, until there are only a few left */
+	void catchUp() {
+		for (int i = 0; i < CATCH_UP_ROUNDS; ++i)
+			if (replay() < FINAL_COMMITS)
+				break;
+	}
+
+	/** Replay the remaining commits and switchover, holding the commit lock */
+	void finish(Runnable switchover) {
+		try {
+			oldDB.withPersistAndCommitLock(() -> {
+				replay();
+				switchover.run();
+			});
+		} finally {
+			end();
+		}
+	}
+
+	/** Complete the snapshot read transaction, if any */
+	void end() {
+		if (rt != null)
+			rt.complete();
+	}
+
+	/**
+	 * Apply the commits to the old database since the last replay.
+	 * Commits are complete up to state.lastadr since it is set after storing.
+	 * @return The number of commits replayed
+	 */
+	private int replay() {
+		int last = oldDB.state.lastadr;
+		StorageIter iter = new StorageIter(oldDB.dstor, replayed);
+		int n = 0;
+		while (Integer.compareUnsigned(replayed, last) < 0) {
+			iter.advance2();
+			replayed = iter.adr();
+			new Replay(replayed).process();
+			++n;
+		}
+		return n;
+	}
+
 	private void copySchema() {
 		copyTable("views");
 		IndexIter iter = rt.iter(Bootstrap.TN.TABLES, "tablename");
@@ -48,37 +127,66 @@ class DbCompact {
 		Request.execute(newDB, "create " + tablename + schema);
 	}
 
+	/**
+	 * Reading the old database is done by a {@link Pipeline} thread
+	 * so it overlaps with storing and index building.
+	 */
 	private int copyData() {
+		try (Pipeline<Object> input = new Pipeline<>("DbCompact", this::readTables)) {
+			int n = 0;
+			String tablename;
+			while (null != (tablename = (String) input.take())) {
+				copyTable(tablename, input);
+				++n;
+			}
+			return n;
+		}
+	}
+
+	/** Runs in the pipeline thread, outputs the tablename then readRecords */
+	private void readTables(Consumer<Object> out) {
 		IndexIter iter = rt.iter(Bootstrap.TN.TABLES, "tablename");
-		int n = 0;
 		for (iter.next(); ! iter.eof(); iter.next()) {
 			Record r = rt.input(iter.keyadr());
 			String tablename = r.getString(Table.TABLE);
 			if (! Database.isSystemTable(tablename)) {
-				copyTable(tablename);
-				++n;
+				out.accept(tablename);
+				readRecords(tablename, out);
 			}
 		}
-		return n;
 	}
 
-	// TODO create each index by reading via the same index in the source
-	// so that keys are added optimally in order
-	private void copyTable(String tablename) {
+	/** Runs in the pipeline thread, outputs the records then END_TABLE */
+	private void readRecords(String tablename, Consumer<Object> out) {
 		Table oldtable = rt.ck_getTable(tablename);
 		List<String> fields = oldtable.getFields();
 		boolean squeeze = DbDump.needToSqueeze(rt, oldtable.num, fields);
+		IndexIter iter = rt.iter(oldtable.num, null);
+		for (iter.next(); ! iter.eof(); iter.next()) {
+			DataRecord r = rt.input(iter.keyadr());
+			if (squeeze)
+				r = DbDump.squeezeRecord(r, fields).build();
+			out.accept(r);
+		}
+		out.accept(DbLoad.END_TABLE);
+	}
+
+	private void copyTable(String tablename) {
+		try (Pipeline<Object> input = new Pipeline<>("DbCompact",
+				out -> readRecords(tablename, out))) {
+			copyTable(tablename, input);
+		}
+	}
+
+	private void copyTable(String tablename, Pipeline<Object> input) {
 		BulkTransaction t = newDB.bulkTransaction();
 		try {
 			int first = 0;
 			int last = 0;
 			Table newtable = t.ck_getTable(tablename);
-			IndexIter iter = rt.iter(oldtable.num, null);
-			for (iter.next(); ! iter.eof(); iter.next()) {
-				DataRecord r = rt.input(iter.keyadr());
-				if (squeeze)
-					r = DbDump.squeezeRecord(r, fields).build();
-				last = t.loadRecord(newtable.num, r);
+			Object rec;
+			while (DbLoad.END_TABLE != (rec = input.take())) {
+				last = t.loadRecord(newtable.num, (DataRecord) rec);
 				if (first == 0)
 					first = last;
 			}
@@ -89,6 +197,78 @@ class DbCompact {
 		}
 	}
 
+	/** Applies an update commit from the old database to the new database */
+	private class Replay extends CommitProcessor {
+		private UpdateTransaction t;
+
+		Replay(int adr) {
+			super(oldDB.dstor, adr);
+		}
+
+		@Override
+		void process() {
+			try {
+				super.process();
+			} finally {
+				if (t != null)
+					t.abortIfNotComplete();
+			}
+		}
+
+		@Override
+		void type(char c) {
+			if (c != 'u')
+				throw new SuException("online compact: " +
+						(c == 's' ? "schema change" : "bulk load") + " during compact");
+			t = new DbRebuild.RebuildTransaction(newDB);
+		}
+
+		// addresses are for the old database
+		// records are found in the new database by key
+
+		@Override
+		void add(DataRecord r) {
+			int tn = r.tblnum();
+			t.addRecord(tblnum(tn), squeeze(tn, r));
+		}
+
+		@Override
+		void update(DataRecord from, DataRecord to) {
+			int tn = from.tblnum();
+			t.updateRecord(tblnum(tn), squeeze(tn, from), squeeze(tn, to));
+		}
+
+		@Override
+		void remove(DataRecord r) {
+			int tn = r.tblnum();
+			t.removeRecord(tblnum(tn), squeeze(tn, r));
+		}
+
+		/** table numbers may differ, map by name */
+		private int tblnum(int oldtblnum) {
+			return t.ck_getTable(rt.getTable(oldtblnum).name).num;
+		}
+
+		/** drop deleted fields, the same as copyData */
+		private DataRecord squeeze(int oldtblnum, DataRecord r) {
+			if (! squeezeFields.containsKey(oldtblnum)) {
+				List<String> fields = rt.getTable(oldtblnum).getFields();
+				squeezeFields.put(oldtblnum,
+						DbDump.needToSqueeze(rt, oldtblnum, fields) ? fields : null);
+			}
+			List<String> fields = squeezeFields.get(oldtblnum);
+			if (fields != null)
+				r = DbDump.squeezeRecord(r, fields).build();
+			r.address(0);
+			return r;
+		}
+
+		@Override
+		void after() {
+			t.ck_complete();
+		}
+	}
+
 //	public static void main(String[] args) throws InterruptedException {
 //		Database dbin = (Database) dbpkg.openReadonly("/test/sample/suneido.db");
 //		Database dbout = (Database) dbpkg.create("immu.compact");
@@ -12,22 +12,33 @@ import static suneido.util.Verify.verify;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
+import com.google.common.collect.ImmutableList;
+
+import suneido.database.query.ExternalSort;
 import suneido.database.query.Request;
 
 class DbLoad {
+	/** marks the end of a table's records in the pipeline */
+	static final Object END_TABLE = new Object();
 
 	static int loadDatabase(Database db, ReadableByteChannel in) {
 		try {
 			verifyFileHeader(in);
-			String schema;
-			int n = 0;
-			while (null != (schema = readTableHeader(in))) {
-				schema = "create" + schema.substring(6);
-				load1(db, in, schema);
-				++n;
+			try (Pipeline<Object> input =
+					new Pipeline<>("DbLoad", out -> readTables(in, out))) {
+				int n = 0;
+				String schema;
+				while (null != (schema = (String) input.take())) {
+					schema = "create" + schema.substring(6);
+					load1(db, input, schema);
+					++n;
+				}
+				return n;
 			}
-			return n;
 		} catch (Exception e) {
 			throw new RuntimeException("load failed", e);
 		}
@@ -41,12 +52,38 @@ class DbLoad {
 				throw new RuntimeException("not a valid dump file");
 			schema = "create " + tablename + schema.substring(6);
 			db.dropTable(tablename);
-			return load1(db, in, schema);
+			try (Pipeline<Object> input =
+					new Pipeline<>("DbLoad", out -> readRecords(in, out))) {
+				return load1(db, input, schema);
+			}
 		} catch (Exception e) {
 			throw new RuntimeException("load failed", e);
 		}
 	}
 
+	/** Runs in the pipeline thread, outputs the schema then readRecords */
+	private static void readTables(ReadableByteChannel in, Consumer<Object> out)
+			throws IOException {
+		String schema;
+		while (null != (schema = readTableHeader(in))) {
+			out.accept(schema);
+			readRecords(in, out);
+		}
+	}
+
+	/** Runs in the pipeline thread, outputs the records then END_TABLE */
+	private static void readRecords(ReadableByteChannel in, Consumer<Object> out)
+			throws IOException {
+		ByteBuffer intbuf = ByteBuffer.allocate(4);
+		int n;
+		while (0 != (n = readInt(in, intbuf))) {
+			ByteBuffer recbuf = ByteBuffer.allocate(n);
+			fullRead(in, recbuf, n);
+			out.accept(new DataRecord(recbuf));
+		}
+		out.accept(END_TABLE);
+	}
+
 	private static void verifyFileHeader(ReadableByteChannel in)
 			throws IOException {
 		String s = getline(in);
@@ -65,33 +102,28 @@ class DbLoad {
 		return schema;
 	}
 
-	private static int load1(Database db, ReadableByteChannel in, String schema)
-			throws IOException {
+	private static int load1(Database db, Pipeline<Object> input, String schema) {
 		int i = schema.indexOf(' ', 7);
 		String table = schema.substring(7, i);
 		if (! "views".equals(table))
 			Request.execute(db, schema);
-		return load_data(db, in, table);
+		return load_data(db, input, table);
 	}
 
-	private static int load_data(Database db, ReadableByteChannel in, String tablename)
-			throws IOException {
+	private static int load_data(Database db, Pipeline<Object> input,
+			String tablename) {
 		print(tablename);
 		int nrecs = 0;
-		ByteBuffer intbuf = ByteBuffer.allocate(4);
-		ByteBuffer recbuf = ByteBuffer.allocate(4_000_000);
 		BulkTransaction t = db.bulkTransaction();
 		try {
 			Table table = t.getTable(tablename);
 			int first = 0;
 			int last = 0;
-			for (;; ++nrecs) {
+			Object rec;
+			for (; END_TABLE != (rec = input.take()); ++nrecs) {
 				if (nrecs % 10000 == 0)
 					print(".");
-				int n = readInt(in, intbuf);
-				if (n == 0)
-					break;
-				last = load_data_record(in, table.num, t, recbuf, n);
+				last = t.loadRecord(table.num, (DataRecord) rec);
 				if (first == 0)
 					first = last;
 			}
@@ -104,36 +136,42 @@ class DbLoad {
 		return nrecs;
 	}
 
-	private static int load_data_record(ReadableByteChannel in, int tblnum,
-			BulkTransaction t, ByteBuffer recbuf, int n)
-			throws IOException {
-		fullRead(in, recbuf, n);
-		DataRecord rec = new DataRecord(recbuf);
-		return t.loadRecord(tblnum, rec);
-	}
-
+	/**
+	 * Builds all the indexes for a table with one scan of the data.
+	 * The sorting is done in parallel,
+	 * but the nodes are stored by this thread since it is a BulkTransaction.
+	 * The sort memory is divided between the indexes.
+	 */
 	static void createIndexes(BulkTransaction t, Table table, int first, int last) {
 		if (first == 0)
 			return; // no data
-		for (Index index : table.indexes) {
-			print("\t" + index.columns(table.columns));
-			createIndex(t, first, last, index);
-		}
-	}
-
-	private static void createIndex(BulkTransaction t, int first, int last, Index index) {
-		TranIndex btree = t.getIndex(index.tblnum, index.colNums);
-		StoredRecordIterator iter = t.storedRecordIterator(first, last);
-		int i = 0;
-		while (iter.hasNext()) {
-			if (i++ % 10000 == 0)
-				print(".");
-			int adr = iter.nextAdr();
-			Record rec = iter.next();
-			BtreeKey key = IndexedData.key(rec, index.colNums, adr);
-			btree.add(key, false);
+		List<Index> indexes = ImmutableList.copyOf(table.indexes);
+		long sortMemory = ExternalSort.memoryLimit() / indexes.size();
+		List<BtreeBuilder> builders = new ArrayList<>();
+		try {
+			for (Index index : indexes) {
+				print("\t" + index.columns(table.columns));
+				builders.add(t.btreeBuilder(index, sortMemory));
+			}
+			StoredRecordIterator iter = t.storedRecordIterator(first, last);
+			int n = 0;
+			while (iter.hasNext()) {
+				if (n++ % 10000 == 0)
+					print(".");
+				int adr = iter.nextAdr();
+				Record rec = iter.next();
+				for (int i = 0; i < indexes.size(); ++i)
+					builders.get(i).add(
+							IndexedData.key(rec, indexes.get(i).colNums, adr));
+			}
+			print("^");
+			builders.parallelStream().forEach(BtreeBuilder::sort);
+			for (BtreeBuilder b : builders)
+				b.build();
+		} finally {
+			for (BtreeBuilder b : builders)
+				b.close();
 		}
-		print("^");
 		t.saveBtrees();
 		print("\n");
 	}
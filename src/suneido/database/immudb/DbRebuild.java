@@ -386,6 +386,10 @@ class DbRebuild {
 		@Override
 		public void callTrigger(Table table, Record oldrec, Record newrec) {
 		}
+		@Override
+		protected boolean groupable() {
+			return false;
+		}
 	}
 
 //	public static void main(String[] args) {
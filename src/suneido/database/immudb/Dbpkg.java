@@ -8,7 +8,14 @@ import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import suneido.SuException;
+import suneido.database.query.QueryCache;
+import suneido.database.query.TempIndex;
+import suneido.util.Errlog;
 import suneido.util.FileUtils;
 
 /**
@@ -75,6 +82,92 @@ public class Dbpkg {
 		return DbCompact.compact(srcdb, dstdb);
 	}
 
+	/**
+	 * Compact a database while it is in use, see {@link DbCompact}.
+	 * Holding the commit lock, the database is closed,
+	 * its files are replaced (with backups) and it is reopened.
+	 * If replacing or reopening fails, the original files are restored
+	 * and reopened instead.
+	 * Commits of transactions outstanding on the old database will fail.
+	 * @param reopened Called with the new (or restored) database
+	 * before the commit lock is released
+	 * @return The number of tables
+	 */
+	public static int compactOnline(Database db, Consumer<Database> reopened) {
+		if (db.filename.equals(""))
+			throw new SuException("can't compact online without a database file");
+		String tempfile = FileUtils.tempfile("d", "i", "c").toString();
+		Database newdb = Database.create(tempfile);
+		try {
+			return DbCompact.compactOnline(db, newdb, () -> {
+				newdb.close();
+				db.close(); // can't rename open (mapped) files on Windows
+				replaceDb(tempfile, db.filename, reopened);
+			});
+		} finally {
+			newdb.close();
+			new File(tempfile).delete();
+			for (String ext : DB_EXTENSIONS)
+				new File(tempfile + ext).delete();
+		}
+	}
+
+	private static final String[] DB_EXTENSIONS = { "d", "i", "c" };
+
+	/**
+	 * Rename the (closed) new database files over the (closed) old ones,
+	 * keeping backups, open the result and pass it to reopened.
+	 * If any step fails the renames are undone
+	 * and the old database is reopened and passed to reopened instead,
+	 * before rethrowing the exception.
+	 */
+	static void replaceDb(String tempfile, String dbFilename,
+			Consumer<Database> reopened) {
+		List<String> renamed = new ArrayList<>();
+		Database db;
+		try {
+			for (String ext : DB_EXTENSIONS)
+				if (new File(tempfile + ext).exists()) {
+					FileUtils.renameWithBackup(tempfile + ext, dbFilename + ext);
+					renamed.add(ext);
+				}
+			db = Database.open(dbFilename);
+			if (db == null)
+				throw new SuException("could not open database after compact");
+		} catch (Throwable e) {
+			try {
+				for (String ext : renamed)
+					restoreBackup(dbFilename + ext, tempfile + ext);
+				reopened.accept(reopen(dbFilename));
+			} catch (Throwable e2) {
+				e.addSuppressed(e2);
+			}
+			throw e;
+		}
+		reopened.accept(db);
+	}
+
+	/**
+	 * Open the restored database. It was in use until the compact,
+	 * so if the check fails it is still better than no database.
+	 */
+	private static Database reopen(String dbFilename) {
+		Database db = Database.open(dbFilename);
+		if (db == null) {
+			Errlog.error("compact: restored database failed check, " +
+					"opening without check");
+			db = Database.openWithoutCheck(dbFilename);
+		}
+		return db;
+	}
+
+	/** move file back to tempfile and its backup back to file */
+	private static void restoreBackup(String file, String tempfile) {
+		if (! new File(file).renameTo(new File(tempfile)) ||
+				! new File(file + ".bak").renameTo(new File(file)))
+			throw new SuException("can't restore " + file + " from backup");
+	}
+
 	public static String rebuild(String dbFilename, String tempfilename) {
 		return DbRebuild.rebuild(dbFilename, tempfilename);
 	}
@@ -94,11 +187,26 @@ public class Dbpkg {
 		return new RecordStore();
 	}
 
+	/** @return A RecordStore in a memory mapped temporary file */
+	public static RecordStore tempRecordStore() {
+		return new RecordStore(new TempStorage());
+	}
+
 	public static void setOption(String name, Object value) {
 		if (name.equals("max_update_tran_sec"))
 			Transactions.MAX_UPDATE_TRAN_DURATION_SEC = (Integer) value;
 		if (name.equals("max_writes_per_tran"))
 			UpdateTransaction.MAX_WRITES_PER_TRANSACTION = (Integer) value;
+		if (name.equals("btree_node_cache_size"))
+			BtreeNodeCache.setSize((Integer) value);
+		if (name.equals("group_commit"))
+			GroupCommit.enabled = (Boolean) value;
+		if (name.equals("group_commit_window_us"))
+			GroupCommit.windowMicros = (Integer) value;
+		if (name.equals("query_cache_size"))
+			QueryCache.setSize((Integer) value);
+		if (name.equals("tempindex_memory"))
+			TempIndex.setMemoryLimit((Integer) value);
 	}
 
 	public static boolean dbExists(String dbFilename) {
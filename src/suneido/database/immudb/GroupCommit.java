@@ -0,0 +1,132 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.immudb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Throwables;
+
+import suneido.util.Errlog;
+import suneido.util.ThreadSafe;
+
+/**
+ * Optional group commit for {@link UpdateTransaction}.
+ * Committing threads queue their transaction and then get the commit lock.
+ * Whichever thread gets the lock commits everything that is queued
+ * and publishes a single new database state for the whole batch.
+ * Other threads will usually find their transaction already committed
+ * and not need the lock at all.
+ * <p>
+ * Each transaction is still validated individually,
+ * against the transactions before it in the batch as well as trans,
+ * and is stored as its own data commit,
+ * so the data file format is the same as without group commit.
+ * <p>
+ * Enabled by the -gc command line option, see {@link Dbpkg}.setOption
+ */
+@ThreadSafe
+class GroupCommit {
+	static volatile boolean enabled = false;
+	/**
+	 * How long (microseconds) a committer waits for others to join it
+	 * when it is the only one queued. Zero means no waiting,
+	 * batches will only form from commits that arrive while the lock is held.
+	 */
+	static volatile int windowMicros = 0;
+	private static final int MAX_BATCH = 100;
+	private final Database db;
+	private final ConcurrentLinkedQueue<Request> queue =
+			new ConcurrentLinkedQueue<>();
+	private final AtomicLong nbatches = new AtomicLong();
+	private final AtomicLong ncommits = new AtomicLong();
+
+	GroupCommit(Database db) {
+		this.db = db;
+	}
+
+	private static class Request {
+		final UpdateTransaction t;
+		/** set before done */
+		Throwable error;
+		volatile boolean done = false;
+
+		Request(UpdateTransaction t) {
+			this.t = t;
+		}
+	}
+
+	/**
+	 * Commits t, possibly along with other queued transactions.
+	 * Returns when t has been committed (by this thread or another).
+	 * Throws the Conflict (or other exception) if t failed to commit.
+	 */
+	void commit(UpdateTransaction t) {
+		Request req = new Request(t);
+		queue.add(req);
+		int window = windowMicros;
+		if (window > 0 && queue.peek() == req)
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(window));
+		if (! req.done)
+			db.withCommitLock(() -> {
+				while (! req.done)
+					commitBatch();
+			});
+		if (req.error != null) {
+			Throwables.throwIfUnchecked(req.error);
+			throw new RuntimeException(req.error);
+		}
+	}
+
+	/** Must be called while holding the commit lock */
+	private void commitBatch() {
+		List<Request> reqs = new ArrayList<>();
+		List<UpdateTransaction> batch = new ArrayList<>();
+		DbHashTrie dbinfo = db.state.dbinfo;
+		Tran.StoreInfo last = null;
+		Request req;
+		while (reqs.size() < MAX_BATCH && null != (req = queue.poll())) {
+			reqs.add(req);
+			try {
+				last = req.t.commitStore(dbinfo, batch);
+				dbinfo = req.t.dbinfo;
+				batch.add(req.t);
+			} catch (Throwable e) {
+				req.error = e;
+			}
+		}
+		if (last != null)
+			publish(dbinfo, last, batch);
+		for (Request r : reqs)
+			r.done = true;
+	}
+
+	/** The final step that makes the whole batch permanent */
+	private void publish(DbHashTrie dbinfo, Tran.StoreInfo last,
+			List<UpdateTransaction> batch) {
+		try {
+			Database.State state = db.state;
+			db.setState(state.dbinfoadr, dbinfo, state.schema,
+					last.cksum, last.adr);
+			for (UpdateTransaction t : batch)
+				t.committed();
+			nbatches.incrementAndGet();
+			ncommits.addAndGet(batch.size());
+		} catch (Throwable e) {
+			Errlog.fatal("ERROR in GroupCommit.publish", e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "GroupCommit batches " + nbatches.get() +
+				" commits " + ncommits.get();
+	}
+
+}
@@ -20,22 +20,82 @@ import suneido.util.IntArraysList;
  * This isn't necessary for reading forwards
  * but to handle changing direction it's easier to always do it.
  * Similar to {@link StorageIterator} but bidirectional.
+ * <p>
+ * The table's commits come from its {@link TableHistory}.
+ * Only commits before the history index was added
+ * are found by reading through the data storage.
+ * A date range can be selected, indexed commits are binary searched by date.
  */
 public class HistoryIterator {
 	private final Storage dstor;
 	private final int tblnum;
+	/** the indexed commits, in order */
+	private final int[] commits;
+	/** whether there are earlier commits that must be found by reading */
+	private final boolean unindexed;
+	private SuDate from = null;
+	private SuDate to = null;
+	/** the range of commits within the selected dates */
+	private int clo;
+	private int chi;
+	/** the current position in commits, -1 when reading unindexed commits */
+	private int ci;
 	private boolean rewound;
 	private Date date;
 	private IntArraysList rlist;
 	private int ri;
 	private int adr;
 
-	HistoryIterator(Storage dstor, int tblnum) {
+	HistoryIterator(Storage dstor, int tblnum, TableHistory.Addresses history) {
 		this.dstor = dstor;
 		this.tblnum = tblnum;
+		this.commits = history.commits;
+		this.unindexed = history.unindexed;
+		select(null, null);
+	}
+
+	/**
+	 * Limit to commits between from and to (inclusive)
+	 * @param from null for no lower limit
+	 * @param to null for no upper limit
+	 */
+	public void select(SuDate from, SuDate to) {
+		this.from = from;
+		this.to = to;
+		clo = (from == null) ? 0 : lowerBound(from, false);
+		chi = (to == null) ? commits.length : lowerBound(to, true);
 		rewind();
 	}
 
+	/** @return The index of the first commit after (or at if ! after) date */
+	private int lowerBound(SuDate date, boolean after) {
+		int lo = 0;
+		int hi = commits.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int cmp = commitDate(commits[mid]).compareTo(date);
+			if (cmp < 0 || (after && cmp == 0))
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	private SuDate commitDate(int adr) {
+		ByteBuffer buf = dstor.buffer(adr);
+		buf.getInt(); // size
+		return SuDate.fromTime(1000L * buf.getInt());
+	}
+
+	/**
+	 * Unindexed commits are before the indexed ones
+	 * so they are only read if the range starts at the first indexed commit
+	 */
+	private boolean readUnindexed() {
+		return unindexed && clo == 0;
+	}
+
 	public void rewind() {
 		rewound = true;
 		rlist = new IntArraysList();
@@ -66,21 +126,43 @@ public class HistoryIterator {
 
 	private boolean nextCommit() {
 		do {
-			if (rewound) {
-				rewound = false;
-				adr = Storage.FIRST_ADR;
-			} else {
-				long size = Storage.intToSize(dstor.buffer(adr).getInt());
-				adr = dstor.advance(adr, size);
-				if (!dstor.isValidAdr(adr))
-					return false; // eof
-			}
+			if (! advance())
+				return false; // eof
 			readList();
 		} while (date == null || rlist.size() == 0); // skip aborted or empty
 		ri = -1;
 		return true;
 	}
 
+	private boolean advance() {
+		if (rewound) {
+			rewound = false;
+			if (readUnindexed()) {
+				ci = -1;
+				adr = Storage.FIRST_ADR;
+				if (unindexedAdr(adr))
+					return true;
+			}
+			ci = clo - 1;
+		} else if (ci < 0) {
+			long size = Storage.intToSize(dstor.buffer(adr).getInt());
+			adr = dstor.advance(adr, size);
+			if (unindexedAdr(adr))
+				return true;
+			ci = clo - 1;
+		}
+		if (++ci >= chi)
+			return false;
+		adr = commits[ci];
+		return true;
+	}
+
+	/** whether adr is a valid commit before the indexed commits */
+	private boolean unindexedAdr(int adr) {
+		return dstor.isValidAdr(adr) && (commits.length == 0 ||
+				Integer.compareUnsigned(adr, commits[0]) < 0);
+	}
+
 	/**
 	 * @return null at eof, else a pair of Record's
 	 * the first containing the date/time and "create" or "delete"
@@ -89,7 +171,7 @@ public class HistoryIterator {
 	public Record[] getPrev() {
 		if (rewound) {
 			rewound = false;
-			adr = dstor.upTo();
+			ci = chi;
 		}
 		while (true) {
 			if (ri <= 0) {
@@ -110,18 +192,34 @@ public class HistoryIterator {
 
 	private boolean prevCommit() {
 		do {
-			if (adr == Storage.FIRST_ADR)
+			if (! retreat())
 				return false; // eof
-			int size;
-			while (0 == (size = getPrevSize(adr)))
-				--adr; // skip end of chunk padding
-			adr -= size;
 			readList();
 		} while (date == null || rlist.size() == 0); // skip aborted or empty
 		ri = rlist.size();
 		return true;
 	}
 
+	private boolean retreat() {
+		if (ci > clo) {
+			adr = commits[--ci];
+			return true;
+		}
+		if (ci == clo) {
+			if (! readUnindexed())
+				return false;
+			ci = -1;
+			adr = (commits.length == 0) ? dstor.upTo() : commits[0];
+		}
+		if (adr == Storage.FIRST_ADR)
+			return false;
+		int size;
+		while (0 == (size = getPrevSize(adr)))
+			--adr; // skip end of chunk padding
+		adr -= size;
+		return true;
+	}
+
 	int getPrevSize(int adr) {
 		ByteBuffer buf = dstor.buffer(adr - 1);
 		buf.getInt(); // skip checksum
@@ -151,6 +249,13 @@ public class HistoryIterator {
 		@Override
 		void date(Date d) {
 			date = d; // used to skip aborted commits
+			if (d != null && ci < 0 && ! inRange(d))
+				date = null; // skip, unindexed commits are filtered as read
+		}
+		private boolean inRange(Date d) {
+			SuDate sd = SuDate.fromTime(d.getTime());
+			return (from == null || sd.compareTo(from) >= 0) &&
+					(to == null || sd.compareTo(to) <= 0);
 		}
 		@Override
 		void add(int tn, int adr) {
@@ -7,6 +7,8 @@ package suneido.database.immudb;
 import static suneido.database.immudb.Storage.align;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.google.common.collect.ImmutableList;
 
@@ -20,6 +22,14 @@ import suneido.database.immudb.DbHashTrie.Translator;
  * Uses the same storage layout as Tran
  * but saves to the index storage instead of the data storage.
  * <p>
+ * Stores a snapshot of the database state without holding the commit lock
+ * so commits can continue while persisting.
+ * This is safe because the snapshot is immutable,
+ * storing only sets the addresses of its nodes.
+ * Then, holding the commit lock, the stored btrees and history
+ * are merged into the current state, see {@link #merge}
+ * Commits since the snapshot will be stored by the next persist.
+ * <p>
  * Each persist consists of:<br>
  * header - size and timestamp (timestamp zero if aborted)<br>
  * body - btrees and dbinfo<br>
@@ -35,12 +45,32 @@ class Persist {
 	private DbHashTrie dbinfo;
 	private int head_adr = 0;
 	private int dbinfoadr;
+	/** the table infos replaced by storeBtrees */
+	private final List<TableInfo> stored = new ArrayList<>();
+	private Database.State snapshot;
+	private long dataSize;
 
+	/** Must be called while holding the persist lock */
 	static void persist(Database db) {
-		db.withCommitLock(() -> {
-			Persist p = new Persist(db.state.dbinfo, db.istor);
-			p.run(db);
-		});
+		Persist p = store(db);
+		db.withCommitLock(() -> p.publish(db));
+	}
+
+	/** Store a snapshot of the current state, does not need the commit lock */
+	static Persist store(Database db) {
+		long dataSize = db.dstor.sizeFrom(0); // before the snapshot
+		Database.State s = db.state;
+		Persist p = new Persist(s, dataSize, db.istor);
+		p.startStore();
+		p.storeBtrees();
+		p.store(s.schema, s.lastcksum, s.lastadr);
+		return p;
+	}
+
+	private Persist(Database.State snapshot, long dataSize, Storage istor) {
+		this(snapshot.dbinfo, istor);
+		this.snapshot = snapshot;
+		this.dataSize = dataSize;
 	}
 
 	Persist(DbHashTrie dbinfo, Storage istor) {
@@ -48,13 +78,6 @@ class Persist {
 		this.istor = istor;
 	}
 
-	private void run(Database db) {
-		Database.State dbstate = db.state;
-		startStore();
-		storeBtrees();
-		finish(db, dbstate.schema, dbstate.lastcksum, dbstate.lastadr);
-	}
-
 	/** also called by BulkTransaction */
 	void startStore() {
 		head_adr = istor.alloc(HEAD_SIZE); // to hold size and datetime
@@ -67,7 +90,7 @@ class Persist {
 		return this.dbinfo;
 	}
 
-	/** stores btrees and frees up memory */
+	/** stores btrees and table history and frees up memory */
 	void storeBtrees() {
 		dbinfo.traverseUnstored((Entry e) -> {
 			if (e instanceof TableInfo) {
@@ -81,17 +104,29 @@ class Persist {
 						modified = true;
 					} else
 						b.add(ii);
+				int histadr = ti.histadr;
+				if (ti.commits != null) {
+					histadr = TableHistory.store(istor, histadr, ti.commits);
+					modified = true;
+				}
 				if (modified) {
-					TableInfo ti2 = new TableInfo(ti, b.build());
+					TableInfo ti2 = new TableInfo(ti, b.build(), histadr);
 					this.dbinfo = this.dbinfo.with(ti2);
+					stored.add(ti2);
 				}
 			}
 		});
 	}
 
 
-	/** also called by BulkTransaction */
+	/** used by BulkTransaction, it's exclusive so there can't be other commits */
 	void finish(Database db, Tables schema, int lastcksum, int lastadr) {
+		store(schema, lastcksum, lastadr);
+		db.setState(dbinfoadr, dbinfo, schema, lastcksum, lastadr);
+		db.setPersistState(db.state, db.dstor.sizeFrom(0));
+	}
+
+	private void store(Tables schema, int lastcksum, int lastadr) {
 		dbinfoadr = storeDbinfo();
 		ending(dbinfoadr, schema.maxTblnum, lastcksum, lastadr);
 
@@ -102,9 +137,81 @@ class Persist {
 		int cksum = istor.checksum(head_adr);
 		istor.buffer(tail_adr).putInt(cksum).putInt(size);
 		istor.protect();
+	}
 
-		db.setState(dbinfoadr, dbinfo, schema, lastcksum, lastadr);
-		db.setPersistState();
+	/**
+	 * Must be called while holding the commit lock.
+	 * If there were no commits while storing,
+	 * the stored dbinfo becomes the current state,
+	 * otherwise the stored tables are merged into the current state.
+	 */
+	void publish(Database db) {
+		Database.State cur = db.state;
+		if (cur == snapshot) {
+			db.setState(dbinfoadr, dbinfo, cur.schema, cur.lastcksum, cur.lastadr);
+			db.setPersistState(db.state, dataSize);
+		} else {
+			DbHashTrie merged = merge(cur.dbinfo);
+			db.setState(dbinfoadr, merged, cur.schema, cur.lastcksum, cur.lastadr);
+			db.setPersistState(snapshot, dataSize);
+		}
+	}
+
+	/**
+	 * Replace the parts of the latest dbinfo that are unchanged
+	 * since the snapshot with their stored versions,
+	 * so the next persist only stores what was committed since.
+	 * Unchanged is by identity, commits always create new objects.
+	 */
+	private DbHashTrie merge(DbHashTrie latest) {
+		for (TableInfo ti2 : stored) {
+			TableInfo prev = (TableInfo) snapshot.dbinfo.get(ti2.tblnum);
+			TableInfo cur = (TableInfo) latest.get(ti2.tblnum);
+			if (cur == prev)
+				latest = latest.with(ti2);
+			else if (cur != null)
+				latest = latest.with(merge(prev, ti2, cur, istor));
+		}
+		latest.freeze();
+		return latest;
+	}
+
+	/** @return cur with the stored versions of prev's indexes and history */
+	private static TableInfo merge(TableInfo prev, TableInfo ti2, TableInfo cur,
+			Storage istor) {
+		ImmutableList.Builder<IndexInfo> b = ImmutableList.builder();
+		for (IndexInfo ii : cur.indexInfo)
+			b.add(storedIndex(ii, prev, ti2, istor));
+		int histadr = cur.histadr;
+		TableHistory.Commits commits = cur.commits;
+		if (prev.commits != null && cur.histadr == prev.histadr &&
+				TableHistory.includes(cur.commits, prev.commits)) {
+			histadr = ti2.histadr;
+			commits = TableHistory.after(cur.commits, prev.commits);
+		}
+		return new TableInfo(cur.tblnum, cur.nextfield, cur.nrows(),
+				cur.totalsize(), b.build(), histadr, commits);
+	}
+
+	/**
+	 * If the index is unchanged, its stored version.
+	 * Otherwise it was modified while persisting,
+	 * so replace its memory nodes that were stored with their stored versions,
+	 * otherwise a frequently updated btree would never release them.
+	 * ti2.indexInfo is in the same order as prev.indexInfo
+	 */
+	private static IndexInfo storedIndex(IndexInfo ii, TableInfo prev,
+			TableInfo ti2, Storage istor) {
+		for (int i = 0; i < prev.indexInfo.size(); ++i)
+			if (prev.indexInfo.get(i) == ii)
+				return ti2.indexInfo.get(i);
+		if (! (ii.rootNode instanceof BtreeMemNode))
+			return ii;
+		BtreeMemNode root = (BtreeMemNode) ii.rootNode;
+		BtreeNode root2 = (root.address() != 0)
+				? Btree.nodeAt(istor, root.level, root.address())
+				: root.withoutStored();
+		return (root2 == root) ? ii : new IndexInfo(ii, root2);
 	}
 
 	private void ending(int dbinfoadr, int maxTblnum, int lastcksum, int lastadr) {
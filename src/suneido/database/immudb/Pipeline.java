@@ -0,0 +1,99 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.immudb;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Runs a producer (reading and decoding records) in its own thread,
+ * passing its output through a bounded queue
+ * to the thread running the {@link BulkTransaction}.
+ * This overlaps reading with storing and index building
+ * while keeping a single thread writing to the database.
+ * Used by {@link DbLoad} and {@link DbCompact}
+ */
+class Pipeline<T> implements AutoCloseable {
+	private static final int CAPACITY = 1000;
+	private static final Object END = new Object();
+	private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(CAPACITY);
+	private final Thread thread;
+	private volatile boolean closed = false;
+	private boolean ended = false;
+
+	interface Producer<T> {
+		void run(Consumer<T> out) throws Exception;
+	}
+
+	Pipeline(String name, Producer<T> producer) {
+		thread = new Thread(() -> run(producer), name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void run(Producer<T> producer) {
+		Object last = END;
+		try {
+			producer.run(this::put);
+		} catch (Throwable e) {
+			last = new Failure(e);
+		}
+		if (closed)
+			return;
+		try {
+			queue.put(last);
+		} catch (InterruptedException e) {
+			// closed
+		}
+	}
+
+	private void put(Object x) {
+		try {
+			queue.put(x);
+		} catch (InterruptedException e) {
+			throw new RuntimeException("pipeline closed");
+		}
+	}
+
+	/**
+	 * @return The next item from the producer or null at the end.
+	 * Exceptions from the producer are rethrown.
+	 */
+	@SuppressWarnings("unchecked")
+	T take() {
+		if (ended)
+			return null;
+		Object x = Uninterruptibles.takeUninterruptibly(queue);
+		if (x == END) {
+			ended = true;
+			return null;
+		}
+		if (x instanceof Failure) {
+			ended = true;
+			throw new RuntimeException(thread.getName() + " failed",
+					((Failure) x).e);
+		}
+		return (T) x;
+	}
+
+	/** Stop the producer if it hasn't finished e.g. if the consumer fails */
+	@Override
+	public void close() {
+		closed = true;
+		thread.interrupt();
+	}
+
+	private static class Failure {
+		final Throwable e;
+
+		Failure(Throwable e) {
+			this.e = e;
+		}
+	}
+
+}
@@ -158,6 +158,11 @@ class ReadTransaction extends Transaction {
 		return dbstate.schema.maxTblnum + 1;
 	}
 
+	@Override
+	public Object schema() {
+		return schema;
+	}
+
 	/** @return view definition, else null if view not found */
 	@Override
 	public String getView(String name) {
@@ -333,7 +338,8 @@ class ReadTransaction extends Transaction {
 
 	@Override
 	public HistoryIterator historyIterator(int tblnum) {
-		return new HistoryIterator(db.dstor, tblnum);
+		return new HistoryIterator(db.dstor, tblnum,
+				TableHistory.addresses(db.istor, getTableInfo(tblnum)));
 	}
 
 	@Override
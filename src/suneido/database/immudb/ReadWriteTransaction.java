@@ -298,7 +298,10 @@ abstract class ReadWriteTransaction extends ReadTransaction {
 
 	protected abstract void commit();
 
-	/** Update dbinfo with tidelta and index information and then freeze it */
+	/**
+	 * Update dbinfo with tidelta and index information
+	 * and the commit address for the table history, and then freeze it
+	 */
 	protected void updateDbInfo(TreeMap<Index,TranIndex> indexes) {
 		if (indexes.isEmpty())
 			return;
@@ -323,7 +326,8 @@ abstract class ReadWriteTransaction extends ReadTransaction {
 			TableInfoDelta d = tidelta(tblnum);
 			assert ! info.isEmpty();
 			ti = new TableInfo(tblnum, ti.nextfield,
-					ti.nrows() + d.nrows, ti.totalsize() + d.size, toList(info));
+					ti.nrows() + d.nrows, ti.totalsize() + d.size, toList(info),
+					ti.histadr, TableHistory.add(ti.commits, tran.commitAdr()));
 			dbinfo = dbinfo.with(ti);
 		} while (e != null);
 		dbinfo.freeze();
@@ -58,6 +58,14 @@ public abstract class Record
 		return new DataRecord(stor, adr);
 	}
 
+	/**
+	 * @return An empty record with the address of a data record,
+	 * used by query Table for rows built from just the index key
+	 */
+	public static Record addressOnly(int adr) {
+		return from(adr, EMPTY.getBuffer());
+	}
+
 	abstract ByteBuffer fieldBuffer(int i);
 
 	abstract int fieldLength(int i);
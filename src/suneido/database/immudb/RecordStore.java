@@ -7,9 +7,18 @@ package suneido.database.immudb;
 /**
  * Used to store key records for TempIndex and Project
  * to avoid per-object overhead for large numbers of keys.
+ * Normally in memory, see {@link Dbpkg#tempRecordStore} for off heap.
  */
-public class RecordStore {
-	private final HeapStorage stor = new HeapStorage(16 * 1024);
+public class RecordStore implements AutoCloseable {
+	private final Storage stor;
+
+	RecordStore() {
+		this(new HeapStorage(16 * 1024));
+	}
+
+	RecordStore(Storage stor) {
+		this.stor = stor;
+	}
 
 	public int add(Record rec) {
 		int adr = stor.alloc(rec.packSize());
@@ -20,4 +29,14 @@ public class RecordStore {
 	public Record get(int adr) {
 		return new BufRecord(stor.buffer(adr));
 	}
+
+	/** @return The number of bytes used */
+	public long size() {
+		return stor.sizeFrom(0);
+	}
+
+	@Override
+	public void close() {
+		stor.close();
+	}
 }
@@ -64,6 +64,11 @@ class SchemaTransaction extends UpdateTransaction {
 				? new Btree(tran) : super.getLatestIndex(index);
 	}
 
+	@Override
+	protected boolean groupable() {
+		return false;
+	}
+
 	@Override
 	protected char tranType() {
 		return 's';
@@ -6,6 +6,7 @@ package suneido.database.immudb;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.primitives.UnsignedInts;
 
@@ -35,7 +36,9 @@ import com.google.common.primitives.UnsignedInts;
  * <ul>
  * <li>For visibility, readers must acquire a lock when starting
  * 		and writers must release the <b>same</b> lock when ending
- * <li>Writers must hold the commit lock (only one writer at a time)
+ * <li>Writers must hold the commit lock (only one writer at a time),
+ * 		except for Persist writing the index storage
+ * 		which holds the persist lock and publishes with the commit lock
  * <li>Update transactions call trans.commit/abort at end,
  * 		read transactions call trans.add at beginning
  * <li>Database.check gets commit lock at start,
@@ -58,6 +61,9 @@ abstract class Storage implements AutoCloseable {
 	protected ByteBuffer[] chunks = new ByteBuffer[INIT_CHUNKS];
 	protected long storSize = ALIGN; // one unit reserved
 	private long protect = 0;
+	private static final AtomicInteger nextId = new AtomicInteger();
+	/** identifies this storage in {@link BtreeNodeCache} */
+	final int id = nextId.incrementAndGet();
 
 	Storage(int chunkSize) {
 		CHUNK_SIZE = align(chunkSize);
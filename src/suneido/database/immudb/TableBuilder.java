@@ -362,8 +362,10 @@ public class TableBuilder {
 		}
 		int nrows = (ti == null) ? 0 : ti.nrows();
 		long totalsize = (ti == null) ? 0 : ti.totalsize();
-		t.addTableInfo(
-				new TableInfo(tblnum, nextField, nrows, totalsize, ii.build()));
+		t.addTableInfo(ti == null
+				? new TableInfo(tblnum, nextField, nrows, totalsize, ii.build())
+				: new TableInfo(tblnum, nextField, nrows, totalsize, ii.build(),
+						ti.histadr, ti.commits));
 	}
 
 	private void verify(boolean cond, String msg) {
@@ -0,0 +1,125 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.immudb;
+
+import java.util.ArrayList;
+
+import gnu.trove.list.array.TIntArrayList;
+import suneido.database.immudb.Bootstrap.TN;
+
+/**
+ * Per table index of the data commits that changed the table.
+ * Used by {@link HistoryIterator} so it can go straight to a table's commits
+ * instead of reading every commit in the data storage.
+ * <p>
+ * As transactions commit, their address is added to the {@link TableInfo}
+ * in memory as an immutable list.
+ * Persist stores these as a block in the index storage
+ * (a record of the address of the previous block and then the commit addresses)
+ * and the table info gets the address of the latest block.
+ * <p>
+ * Tables from databases before this index end their chain with UNINDEXED,
+ * their older commits are found by reading the data storage.
+ */
+class TableHistory {
+	/** the end of the chain for a table created with the index */
+	static final int NONE = 0;
+	/** the end of the chain for older tables, not a valid address */
+	static final int UNINDEXED = 1; // less than Storage.FIRST_ADR
+
+	/** Immutable list of commit addresses, newest first */
+	static class Commits {
+		final int adr;
+		final Commits prev;
+
+		private Commits(int adr, Commits prev) {
+			this.adr = adr;
+			this.prev = prev;
+		}
+	}
+
+	/**
+	 * @return The list with the commit address added,
+	 * unchanged if it's already there (e.g. a bulk load saving btrees)
+	 */
+	static Commits add(Commits commits, int adr) {
+		if (adr == 0 || (commits != null && commits.adr == adr))
+			return commits;
+		return new Commits(adr, commits);
+	}
+
+	/** @return Whether tail is part of commits (by identity) */
+	static boolean includes(Commits commits, Commits tail) {
+		for (; commits != null; commits = commits.prev)
+			if (commits == tail)
+				return true;
+		return tail == null;
+	}
+
+	/**
+	 * Used by Persist when there were commits while it was storing
+	 * @return The commits that were added after tail
+	 */
+	static Commits after(Commits commits, Commits tail) {
+		TIntArrayList adrs = new TIntArrayList();
+		for (; commits != tail; commits = commits.prev)
+			adrs.add(commits.adr);
+		Commits result = null;
+		for (int i = adrs.size() - 1; i >= 0; --i)
+			result = new Commits(adrs.get(i), result);
+		return result;
+	}
+
+	/** @return The address of the new block */
+	static int store(Storage stor, int prevBlock, Commits commits) {
+		TIntArrayList adrs = toList(commits);
+		RecordBuilder rb = new RecordBuilder().add(prevBlock);
+		for (int i = 0; i < adrs.size(); ++i)
+			rb.add(adrs.get(i));
+		DataRecord r = rb.build();
+		r.tblnum(TN.TABLES);
+		return r.store(stor);
+	}
+
+	private static TIntArrayList toList(Commits commits) {
+		TIntArrayList list = new TIntArrayList();
+		for (; commits != null; commits = commits.prev)
+			list.add(commits.adr);
+		list.reverse();
+		return list;
+	}
+
+	/** The commits for a table, in order */
+	static class Addresses {
+		final int[] commits;
+		/** whether there are earlier commits that are not indexed */
+		final boolean unindexed;
+
+		Addresses(int[] commits, boolean unindexed) {
+			this.commits = commits;
+			this.unindexed = unindexed;
+		}
+	}
+
+	/** Read the stored blocks for a table plus its unstored commits */
+	static Addresses addresses(Storage istor, TableInfo ti) {
+		ArrayList<Record> blocks = new ArrayList<>();
+		int block = ti.histadr;
+		while (block != NONE && block != UNINDEXED) {
+			Record r = Record.from(istor, block);
+			blocks.add(r);
+			block = r.getInt(0);
+		}
+		TIntArrayList adrs = new TIntArrayList();
+		for (int b = blocks.size() - 1; b >= 0; --b) {
+			Record r = blocks.get(b);
+			for (int i = 1; i < r.size(); ++i)
+				adrs.add(r.getInt(i));
+		}
+		adrs.addAll(toList(ti.commits));
+		return new Addresses(adrs.toArray(), block == UNINDEXED);
+	}
+
+}
@@ -13,7 +13,7 @@ import com.google.common.collect.Iterables;
 import suneido.database.immudb.Bootstrap.TN;
 
 /**
- * Table stats - nextfield, nrows, totalsize, indexInfo
+ * Table stats - nextfield, nrows, totalsize, indexInfo, history
  * <p>
  * Semi-immutable:
  * loaded => immutable => with => mutable => store => immutable
@@ -24,7 +24,8 @@ import suneido.database.immudb.Bootstrap.TN;
  * since that requires more expensive updates.
  * <p>
  * Index info is stored one after another following the table info
- * in the same record.
+ * in the same record, followed by the {@link TableHistory} block address.
+ * Records from before the history index don't have it.
  */
 class TableInfo extends DbHashTrie.Entry {
 	private int adr;
@@ -33,15 +34,28 @@ class TableInfo extends DbHashTrie.Entry {
 	private int nrows;
 	private long totalsize;
 	final ImmutableList<IndexInfo> indexInfo;
+	/** address of the latest stored history block */
+	final int histadr;
+	/** commits not stored in the history yet, null if none */
+	final TableHistory.Commits commits;
 
 	TableInfo(int tblnum, int nextfield, int nrows, long totalsize,
 			ImmutableList<IndexInfo> indexInfo) {
+		this(tblnum, nextfield, nrows, totalsize, indexInfo,
+				TableHistory.NONE, null);
+	}
+
+	TableInfo(int tblnum, int nextfield, int nrows, long totalsize,
+			ImmutableList<IndexInfo> indexInfo,
+			int histadr, TableHistory.Commits commits) {
 		adr = 0;
 		this.tblnum = tblnum;
 		this.nextfield = nextfield;
 		this.nrows = nrows;
 		this.totalsize = totalsize;
 		this.indexInfo = indexInfo;
+		this.histadr = histadr;
+		this.commits = commits;
 	}
 
 	TableInfo(Record rec, int adr) {
@@ -52,13 +66,17 @@ class TableInfo extends DbHashTrie.Entry {
 		nrows = rec.getInt(i++);
 		totalsize = rec.getLong(i++);
 		ImmutableList.Builder<IndexInfo> list = ImmutableList.builder();
-		for (; i < rec.size(); i += IndexInfo.NFIELDS)
+		for (; i + IndexInfo.NFIELDS <= rec.size(); i += IndexInfo.NFIELDS)
 			list.add(new IndexInfo(rec, i));
 		indexInfo = list.build();
+		histadr = (i < rec.size()) ? rec.getInt(i) : TableHistory.UNINDEXED;
+		commits = null;
 	}
 
-	TableInfo(TableInfo ti, ImmutableList<IndexInfo> indexInfo) {
-		this(ti.tblnum, ti.nextfield, ti.nrows, ti.totalsize, indexInfo);
+	/** used by Persist */
+	TableInfo(TableInfo ti, ImmutableList<IndexInfo> indexInfo, int histadr) {
+		this(ti.tblnum, ti.nextfield, ti.nrows, ti.totalsize, indexInfo,
+				histadr, null);
 	}
 
 	/** When a table is dropped, its table info is replaced by an empty entry */
@@ -90,8 +108,8 @@ class TableInfo extends DbHashTrie.Entry {
 
 	TableInfo with(int nr, int size) {
 		if (stored())
-			return new TableInfo(tblnum,
-					nextfield, nrows + nr, totalsize + size, indexInfo);
+			return new TableInfo(tblnum, nextfield, nrows + nr,
+					totalsize + size, indexInfo, histadr, commits);
 		else {
 			nrows += nr;
 			totalsize += size;
@@ -99,13 +117,18 @@ class TableInfo extends DbHashTrie.Entry {
 		}
 	}
 
-	/** @return the address of the stored record */
+	/**
+	 * Persist stores the commits (as a history block) before this
+	 * @return the address of the stored record
+	 */
 	int store(Storage stor) {
 		if (! stored()) {
+			assert commits == null;
 			RecordBuilder rb = new RecordBuilder();
 			rb.add(tblnum).add(nextfield).add(nrows).add(totalsize);
 			for (IndexInfo info : indexInfo)
 				info.addToRecord(rb);
+			rb.add(histadr);
 			DataRecord r = rb.build();
 			r.tblnum(TN.TABLES);
 			adr = r.store(stor);
@@ -133,6 +156,7 @@ class TableInfo extends DbHashTrie.Entry {
 			.add("nrows", nrows)
 			.add("totalsize", totalsize)
 			.addValue(Iterables.toString(indexInfo))
+			.add("histadr", histadr)
 			.toString();
 	}
 
@@ -0,0 +1,61 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.immudb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import suneido.SuException;
+import suneido.util.FileUtils;
+
+/**
+ * Memory mapped temporary file storage,
+ * used by {@link RecordStore} when temp index keys spill out of memory.
+ * The file is deleted by close (or on exit).
+ * Not thread safe, the same as {@link HeapStorage}
+ */
+class TempStorage extends Storage {
+	private static final int CHUNK_SIZE = 16 * 1024 * 1024; // 16 mb
+	private final File file;
+	private final RandomAccessFile fin;
+	private final FileChannel fc;
+
+	TempStorage() {
+		super(CHUNK_SIZE);
+		file = FileUtils.tempfile();
+		try {
+			fin = new RandomAccessFile(file, "rw");
+		} catch (IOException e) {
+			throw new SuException("can't create " + file, e);
+		}
+		fc = fin.getChannel();
+	}
+
+	@Override
+	protected ByteBuffer get(int chunk) {
+		try {
+			return fc.map(FileChannel.MapMode.READ_WRITE,
+					(long) chunk * CHUNK_SIZE, CHUNK_SIZE);
+		} catch (IOException e) {
+			throw new SuException("TempStorage can't map chunk " + chunk, e);
+		}
+	}
+
+	@Override
+	public void close() {
+		chunks = null; // mappings are released by gc
+		try {
+			fc.close();
+			fin.close();
+		} catch (IOException e) {
+			throw new SuException("TempStorage close failed", e);
+		}
+		file.delete(); // may fail on Windows while still mapped
+	}
+
+}
@@ -54,6 +54,11 @@ class Tran implements Translator {
 		head_adr = dstor.alloc(HEAD_SIZE); // to hold size and datetime
 	}
 
+	/** @return The address of the commit being stored, 0 if not storing */
+	int commitAdr() {
+		return head_adr;
+	}
+
 	/**
 	 * Store the size and date/time at the beginning of the commit (head)
 	 * and the checksum and size at the end (tail).
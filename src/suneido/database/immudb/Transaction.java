@@ -41,6 +41,9 @@ public abstract class Transaction {
 
 	public abstract String getView(String viewname);
 
+	/** @return The schema, a new instance if the schema changes */
+	public abstract Object schema();
+
 	public abstract void addRecord(String table, Record r);
 
 	public enum Blocking { BLOCK, NO_BLOCK }
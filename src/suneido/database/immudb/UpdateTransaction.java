@@ -8,6 +8,7 @@ import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.Maps;
@@ -46,8 +47,13 @@ class UpdateTransaction extends ReadWriteTransaction {
 	/** needs to be ordered tree for ReadWriteTransaction updateDbInfo */
 	protected final TreeMap<Index,TranIndex> updatedIndexes = Maps.newTreeMap();
 	private final TIntArrayList actions = new TIntArrayList();
+	/** the dbinfo being committed into, set by commitStore */
+	protected DbHashTrie latest;
 	private int writeCount = 0;
 	static int MAX_WRITES_PER_TRANSACTION = 10000;
+	/** commits smaller than this update their btrees single threaded */
+	static int MIN_PARALLEL_INDEXES = 4;
+	static int MIN_PARALLEL_WRITES = 100;
 	protected static final short UPDATE = (short) 0;
 	protected static final short REMOVE = (short) -1;
 	protected static final short END = (short) -2;
@@ -219,27 +225,57 @@ class UpdateTransaction extends ReadWriteTransaction {
 		StepTimer st = new StepTimer("transaction commit", COMMIT_LIMIT);
 		buildReads();
 		st.step();
-		db.withCommitLock(() -> {
-			st.step();
-			if (db.state.schema != dbstate.schema)
-				throw new Conflict("schema changed");
-			checkForConflicts();
-			st.step();
-			tran.startStore(); // everything after this must be in try block
-			try {
-				storeData();
+		if (GroupCommit.enabled && groupable())
+			db.groupCommit.commit(this);
+		else
+			db.withCommitLock(() -> {
 				st.step();
-				updateBtrees();
+				Tran.StoreInfo info = commitStore(db.state.dbinfo,
+						Collections.emptyList());
 				st.step();
-				updateDbInfo();
-				st.step();
-				finish(); // does tran.endStore()
-			} catch (Throwable e) {
-				tran.abortIncompleteStore();
-				throw e;
-			}
-		});
+				finish(info);
+			});
 		st.finish();
+		db.persistIfNeeded();
+	}
+
+	/**
+	 * Whether this transaction can be committed as part of a group commit.
+	 * Overridden by SchemaTransaction and RebuildTransaction
+	 * which must commit by themselves.
+	 */
+	protected boolean groupable() {
+		return true;
+	}
+
+	/**
+	 * Validates and stores this transaction.
+	 * Must be called while holding the commit lock.
+	 * Does not publish the new database state, that is done by finish
+	 * (or by {@link GroupCommit} for a whole batch).
+	 * Afterwards dbinfo is the new (frozen) dbinfo.
+	 * @param latest The dbinfo to merge into,
+	 * db.state.dbinfo unless part of a group commit.
+	 * @param batch Transactions stored earlier in the same group commit
+	 * that have not been published yet, so they are not in trans.
+	 */
+	Tran.StoreInfo commitStore(DbHashTrie latest,
+			List<UpdateTransaction> batch) {
+		db.checkOpenForCommit();
+		if (db.state.schema != dbstate.schema)
+			throw new Conflict("schema changed");
+		checkForConflicts(batch);
+		this.latest = latest;
+		tran.startStore(); // everything after this must be in try block
+		try {
+			storeData();
+			updateBtrees();
+			updateDbInfo();
+			return tran.endStore();
+		} catch (Throwable e) {
+			tran.abortIncompleteStore();
+			throw e;
+		}
 	}
 
 	private void checkLimits() {
@@ -264,24 +300,30 @@ class UpdateTransaction extends ReadWriteTransaction {
 			tr.build();
 	}
 
-	protected void checkForConflicts() {
+	protected void checkForConflicts(List<UpdateTransaction> batch) {
 		// for each overlapping transaction
 		Set<UpdateTransaction> overlapping = trans.getOverlapping(asof);
-		for (UpdateTransaction t : overlapping) {
-			assert t != this;
-			TIntIterator iter = t.deletes.iterator();
-			while (iter.hasNext()) {
-				int del = iter.next();
-				// check if it deleted from an index range that we read
-				readValidation(del);
-				// check if we deleted the same record
-				checkForDeleteConflict(del);
-			}
-			iter = t.inserts.iterator();
-			while (iter.hasNext())
-				// check if it inserted into an index range that we read
-				readValidation(iter.next());
+		for (UpdateTransaction t : overlapping)
+			checkForConflicts(t);
+		// and any earlier ones in the same group commit
+		for (UpdateTransaction t : batch)
+			checkForConflicts(t);
+	}
+
+	private void checkForConflicts(UpdateTransaction t) {
+		assert t != this;
+		TIntIterator iter = t.deletes.iterator();
+		while (iter.hasNext()) {
+			int del = iter.next();
+			// check if it deleted from an index range that we read
+			readValidation(del);
+			// check if we deleted the same record
+			checkForDeleteConflict(del);
 		}
+		iter = t.inserts.iterator();
+		while (iter.hasNext())
+			// check if it inserted into an index range that we read
+			readValidation(iter.next());
 	}
 
 	// COULD make reads a Table<tblnum,index>
@@ -411,24 +453,51 @@ class UpdateTransaction extends ReadWriteTransaction {
 
 	// update btrees -----------------------------------------------------------
 
+	/**
+	 * Merges each index updated by this transaction into its global btree.
+	 * The indexes are independent so if there are enough of them
+	 * and enough writes, they are merged in parallel.
+	 * The results are put into updatedIndexes afterwards, in index order,
+	 * so the outcome is the same either way.
+	 */
 	private void updateBtrees() {
-		//PERF update in parallel
-		for (Entry<Index, TranIndex> e : indexes.entrySet())
-			updateBtree(e.getKey(), e.getValue());
+		if (indexes.size() >= MIN_PARALLEL_INDEXES &&
+				writeCount >= MIN_PARALLEL_WRITES)
+			updateBtreesParallel();
+		else
+			for (Entry<Index, TranIndex> e : indexes.entrySet())
+				updated(e.getKey(), updateBtree(e.getKey(), e.getValue()));
+	}
+
+	private void updateBtreesParallel() {
+		List<Entry<Index, TranIndex>> entries =
+				new ArrayList<>(indexes.entrySet());
+		List<Btree> results = entries.parallelStream()
+				.map(e -> updateBtree(e.getKey(), e.getValue()))
+				.collect(Collectors.toList());
+		for (int i = 0; i < entries.size(); ++i)
+			updated(entries.get(i).getKey(), results.get(i));
+	}
+
+	private void updated(Index index, Btree btree) {
+		if (btree != null)
+			updatedIndexes.put(index, btree);
 	}
 
-	private void updateBtree(Index index, TranIndex idx) {
+	/**
+	 * Does not modify any transaction state
+	 * so it can be called in parallel for different indexes.
+	 * @return The frozen updated btree, or null if there were no changes
+	 */
+	private Btree updateBtree(Index index, TranIndex idx) {
 		Btree global = getLatestIndex(index);
 		Btree local;
 		boolean updated;
 		if (idx instanceof Btree) {
 			local = (Btree) idx;
 			updated = true;
-			if (local.frozen()) {
-				// created by TableBuilder
-				updatedIndexes.put(index, local);
-				return;
-			}
+			if (local.frozen())
+				return local; // created by TableBuilder
 		} else {
 			OverlayIndex oti = (OverlayIndex) idx;
 			updated = ! oti.removedKeys.isEmpty();
@@ -443,16 +512,16 @@ class UpdateTransaction extends ReadWriteTransaction {
 				throw new Conflict("duplicate key");
 			updated = true;
 		}
-		if (updated) {
-			global.freeze();
-			updatedIndexes.put(index, global);
-		}
+		if (! updated)
+			return null;
+		global.freeze();
 		assert global.frozen();
+		return global;
 	}
 
 	/** overridden by SchemaTransaction */
 	protected Btree getLatestIndex(Index index) {
-		TableInfo ti = (TableInfo) db.state.dbinfo.get(index.tblnum);
+		TableInfo ti = (TableInfo) latest.get(index.tblnum);
 		IndexInfo ii = ti.getIndex(index.colNums);
 		return new Btree(tran, ii);
 	}
@@ -469,7 +538,7 @@ class UpdateTransaction extends ReadWriteTransaction {
 
 	/** overridden by SchemaTransaction */
 	protected void updateDbInfo() {
-		dbinfo = db.state.dbinfo; // the latest
+		dbinfo = latest;
 		updateDbInfo(updatedIndexes);
 		assert schema == db.state.schema;
 	}
@@ -478,18 +547,22 @@ class UpdateTransaction extends ReadWriteTransaction {
 	 * This is the final step that makes the commit permanent.
 	 * An exception part way through this will be bad.
 	 */
-	private void finish() {
+	private void finish(Tran.StoreInfo info) {
 		try {
-			Tran.StoreInfo info = tran.endStore();
 			db.setState(db.state.dbinfoadr, dbinfo, schema, info.cksum, info.adr);
-			commitTime = trans.clock();
-			trans.commit(this);
+			committed();
 			// db.persist(); // for testing - persist after every transaction
 		} catch (Throwable e) {
 			Errlog.fatal("ERROR in UpdateTransaction.finish", e);
 		}
 	}
 
+	/** called after the database state including this commit is published */
+	void committed() {
+		commitTime = trans.clock();
+		trans.commit(this);
+	}
+
 	// end of commit =========================================================
 
 	long asof() {
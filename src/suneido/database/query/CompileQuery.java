@@ -43,9 +43,13 @@ public class CompileQuery {
 	}
 
 	public static Query parse(Transaction tran, ServerData serverData, String s) {
+		return parse(new TreeQueryGenerator(tran), serverData, s);
+	}
+
+	static Query parse(TreeQueryGenerator generator, ServerData serverData,
+			String s) {
 		Lexer lexer = new Lexer(s);
 		lexer.ignoreCase();
-		TreeQueryGenerator generator = new TreeQueryGenerator(tran);
 		ParseQuery<Object, QueryGenerator<Object>> pc =
 				new ParseQuery<Object, QueryGenerator<Object>>(lexer, generator);
 		pc.serverData(serverData);
@@ -29,7 +29,7 @@ public class Delete extends QueryAction {
 		Row row;
 		int n = 0;
 		for (; null != (row = q.get(Dir.NEXT)); ++n)
-			tran.removeRecord(q.tblnum(), row.firstData());
+			tran.removeRecord(q.tblnum(), row.dataRecord(tran));
 		return n;
 	}
 
@@ -8,6 +8,7 @@ import static java.util.Arrays.asList;
 import static suneido.util.Util.*;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -19,12 +20,14 @@ import suneido.SuException;
 import suneido.database.immudb.Dbpkg;
 import suneido.database.immudb.RecordBuilder;
 import suneido.database.query.expr.Expr;
+import suneido.database.query.expr.TieredExpr;
 
 public class Extend extends Query1 {
 	List<String> flds; // modified by Project.transform
 	List<Expr> exprs; // modified by Project.transform
 	private List<String> eflds;
 	private Header hdr = null;
+	private List<TieredExpr> evals;
 	private List<Fixed> fix;
 
 	Extend(Query source, List<String> flds, List<Expr> exprs) {
@@ -106,9 +109,12 @@ public class Extend extends Query1 {
 			Set<String> firstneeds, boolean is_cursor, boolean freeze) {
 		if (!nil(intersect(index, flds)))
 			return IMPOSSIBLE;
+		Set<String> srcneeds = setUnion(eflds, needs);
+		if (needRule(needs) || needRule(firstneeds))
+			// rules can use any of the columns
+			srcneeds = setUnion(srcneeds, source.columns());
 		// NOTE: optimize1 to bypass tempindex
-		return source.optimize1(index,
-				setDifference(setUnion(eflds, needs), flds),
+		return source.optimize1(index, setDifference(srcneeds, flds),
 				setDifference(firstneeds, flds), is_cursor, freeze);
 	}
 
@@ -130,8 +136,12 @@ public class Extend extends Query1 {
 
 	@Override
 	public Row get(Dir dir) {
-		if (hdr == null)
+		if (hdr == null) {
 			hdr = header();
+			evals = new ArrayList<>();
+			for (Expr e : exprs)
+				evals.add(e == null ? null : new TieredExpr(e));
+		}
 		Row srcrow = source.get(dir);
 		if (srcrow == null)
 			return null;
@@ -140,7 +150,7 @@ public class Extend extends Query1 {
 			if (exprs.get(i) != null) {
 //				Row row = new Row(srcrow, rb.build(), Dbpkg.MIN_RECORD);
 				Row row = new Row(srcrow, Dbpkg.MIN_RECORD, rb.build());
-				rb.add(exprs.get(i).eval(hdr, row));
+				rb.add(evals.get(i).eval(hdr, row));
 			}
 //		return new Row(srcrow, rb.build(), Dbpkg.MIN_RECORD);
 		return new Row(srcrow, Dbpkg.MIN_RECORD, rb.build());
@@ -171,7 +181,7 @@ public class Extend extends Query1 {
 	 * @return Whether or not a field depends on a rule.
 	 * This could be indirect e.g a depends on rule in: extend r, a = r
 	 */
-	boolean needRule(List<String> fields) {
+	boolean needRule(Collection<String> fields) {
 		for (String fld : fields)
 			if (needRule(fld))
 				return true;
@@ -0,0 +1,189 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+import suneido.database.immudb.Dbpkg;
+import suneido.database.immudb.Record;
+import suneido.database.immudb.RecordStore;
+import suneido.util.BlockList;
+import suneido.util.IntComparator;
+import suneido.util.Sort;
+
+/**
+ * Sorts the keys for {@link TempIndex} with bounded heap memory.
+ * <p>
+ * Keys are accumulated in a heap RecordStore.
+ * If that exceeds the memory limit the keys are sorted
+ * (in parallel segments) and written as a sorted run
+ * to a memory mapped temporary file.
+ * At the end the runs are merged (n-way) to give the index.
+ * If the limit is never exceeded it is the same as an in-memory sort.
+ * <p>
+ * The index is a BlockList of addresses in the store (4 bytes per key)
+ * so the heap usage is only proportional to the number of keys.
+ * Also used by immudb BtreeBuilder.
+ */
+public class ExternalSort {
+	static volatile long memoryLimit = 64 * 1024 * 1024;
+	/** minimum keys per segment for parallel sort */
+	private static final int SEGMENT_SIZE = 8 * 1024;
+	private RecordStore mem = Dbpkg.recordStore();
+	private BlockList memIndex = new BlockList(comparator(mem));
+	/** sorted runs, null unless spilled */
+	private RecordStore temp;
+	/** addresses in temp, in order, one run after another */
+	private BlockList runs;
+	/** the end position in runs of each run */
+	private final List<Integer> runEnds = new ArrayList<>();
+	private RecordStore stor;
+	private BlockList index;
+	private final long limit;
+
+	public ExternalSort() {
+		this(memoryLimit);
+	}
+
+	/** @param limit The heap memory to use before spilling */
+	public ExternalSort(long limit) {
+		this.limit = limit;
+	}
+
+	/** @return The default memory limit */
+	public static long memoryLimit() {
+		return memoryLimit;
+	}
+
+	public void add(Record key) {
+		memIndex.add(mem.add(key));
+		if (mem.size() > limit)
+			spill();
+	}
+
+	/** @return Whether keys have been written to the temporary file */
+	public boolean spilled() {
+		return temp != null;
+	}
+
+	/** Finish adding and sort. Then use stor() and index() */
+	public void sort() {
+		if (temp == null) {
+			memIndex.sort();
+			stor = mem;
+			index = memIndex;
+		} else {
+			if (memIndex.size() > 0)
+				spill();
+			stor = temp;
+			index = new BlockList(comparator(temp));
+			List<Cursor> cursors = new ArrayList<>();
+			int start = 0;
+			for (int end : runEnds) {
+				cursors.add(new Cursor(temp, runs::get, start, end));
+				start = end;
+			}
+			merge(cursors, index::add);
+			runs = null;
+		}
+		mem = null;
+		memIndex = null;
+	}
+
+	public RecordStore stor() {
+		return stor;
+	}
+
+	public BlockList index() {
+		return index;
+	}
+
+	/** sort the keys in memory and write them to temp as a run */
+	private void spill() {
+		if (temp == null) {
+			temp = Dbpkg.tempRecordStore();
+			runs = new BlockList();
+		}
+		int n = memIndex.size();
+		int[] adrs = new int[n];
+		for (int i = 0; i < n; ++i)
+			adrs[i] = memIndex.get(i);
+		IntComparator cmp = comparator(mem);
+		int nseg = Math.max(1, Math.min(
+				Runtime.getRuntime().availableProcessors(), n / SEGMENT_SIZE));
+		IntStream.range(0, nseg).parallel().forEach(i ->
+				Sort.sort(adrs, segStart(i, n, nseg), segStart(i + 1, n, nseg), cmp));
+		List<Cursor> cursors = new ArrayList<>();
+		for (int i = 0; i < nseg; ++i)
+			cursors.add(new Cursor(mem, j -> adrs[j],
+					segStart(i, n, nseg), segStart(i + 1, n, nseg)));
+		RecordStore from = mem;
+		merge(cursors, adr -> runs.add(temp.add(from.get(adr))));
+		runEnds.add(runs.size());
+		mem = Dbpkg.recordStore();
+		memIndex = new BlockList(comparator(mem));
+	}
+
+	private static int segStart(int i, int n, int nseg) {
+		return (int) ((long) i * n / nseg);
+	}
+
+	/** n-way merge, passing the addresses to out in order */
+	private static void merge(List<Cursor> cursors, IntConsumer out) {
+		PriorityQueue<Cursor> pq = new PriorityQueue<>(Math.max(1, cursors.size()),
+				(x, y) -> x.key.compareTo(y.key));
+		for (Cursor c : cursors)
+			if (c.next())
+				pq.add(c);
+		while (! pq.isEmpty()) {
+			Cursor c = pq.poll();
+			out.accept(c.adr);
+			if (c.next())
+				pq.add(c);
+		}
+	}
+
+	private static IntComparator comparator(RecordStore stor) {
+		return (int x, int y) -> stor.get(x).compareTo(stor.get(y));
+	}
+
+	/** Close the temporary file (if any) */
+	public void close() {
+		if (temp != null)
+			temp.close();
+		temp = null;
+	}
+
+	/** a position in a sorted sequence of addresses */
+	private static class Cursor {
+		final RecordStore stor;
+		final IntUnaryOperator adrs;
+		int i;
+		final int end;
+		int adr;
+		Record key;
+
+		Cursor(RecordStore stor, IntUnaryOperator adrs, int start, int end) {
+			this.stor = stor;
+			this.adrs = adrs;
+			this.i = start;
+			this.end = end;
+		}
+
+		boolean next() {
+			if (i >= end)
+				return false;
+			adr = adrs.applyAsInt(i++);
+			key = stor.get(adr);
+			return true;
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import suneido.database.immudb.Record;
+import suneido.database.query.Query.Dir;
+
+/**
+ * In memory hash table of the rows from the right side of a Join,
+ * keyed by the packed join columns.
+ * Used by Join instead of selecting source2 for each row
+ * when source2 doesn't have an index on the join columns.
+ * Built from all of source2 on first use, like TempIndex.
+ */
+class HashJoin {
+	private final HashMap<Record,List<Row>> map = new HashMap<>();
+	private List<Row> rows = Collections.emptyList();
+	private int i;
+
+	HashJoin(Query source2, List<String> joincols) {
+		Row.Col[] cols = source2.header().resolve(joincols);
+		Row row;
+		while (null != (row = source2.get(Dir.NEXT)))
+			map.computeIfAbsent(row.project(cols), k -> new ArrayList<>(1))
+					.add(row);
+	}
+
+	/** the equivalent of source2.select(joincols, key) */
+	void select(Record key, Dir dir) {
+		rows = map.getOrDefault(key, Collections.emptyList());
+		i = (dir == Dir.NEXT) ? -1 : rows.size();
+	}
+
+	/** the equivalent of source2.get(dir) */
+	Row get(Dir dir) {
+		if (dir == Dir.NEXT) {
+			if (i < rows.size())
+				++i;
+		} else if (i >= 0)
+			--i;
+		return (0 <= i && i < rows.size()) ? rows.get(i) : null;
+	}
+
+}
@@ -10,6 +10,7 @@ import static suneido.util.Util.union;
 import static suneido.util.Verify.verify;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.google.common.base.MoreObjects;
@@ -20,6 +21,7 @@ public class Header {
 	List<List<String>> flds;
 	List<String> cols;
 	private List<String> fldsyms;
+	private Row.Col[] equalCols;
 	private String timestamp = "";
 
 	public Header(List<List<String>> flds, List<String> cols) {
@@ -74,12 +76,42 @@ public class Header {
 	}
 
 	public boolean equal(Row r1, Row r2) {
-		for (String f : columns())
-			if (! r1.getraw(this, f).equals(r2.getraw(this, f)))
+		if (equalCols == null)
+			equalCols = resolve(columns());
+		for (Row.Col c : equalCols)
+			if (! r1.getraw(c).equals(r2.getraw(c)))
 				return false;
 		return true;
 	}
 
+	/**
+	 * Resolves a column to its positions in the data records
+	 * so per row access doesn't have to search.
+	 * Handles rules and special _lower! fields the same as Row.getval
+	 */
+	public Row.Col resolve(String col) {
+		int[] slots = new int[0];
+		if (col != null && ! "-".equals(col))
+			for (int i = 0; i < flds.size(); ++i) {
+				int j = flds.get(i).indexOf(col);
+				if (j != -1) {
+					slots = Arrays.copyOf(slots, slots.length + 2);
+					slots[slots.length - 2] = i;
+					slots[slots.length - 1] = j;
+				}
+			}
+		Row.Col base = col != null && isSpecialField(col)
+				? resolve(Util.beforeLast(col, "_")) : null;
+		return new Row.Col(this, col, slots, cols.contains(col), base);
+	}
+
+	public Row.Col[] resolve(List<String> cols) {
+		Row.Col[] result = new Row.Col[cols.size()];
+		for (int i = 0; i < result.length; ++i)
+			result[i] = resolve(cols.get(i));
+		return result;
+	}
+
 	/**
 	 * @return A list of the logical columns, including rules.
 	 * Does not include deleted fields.
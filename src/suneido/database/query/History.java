@@ -9,6 +9,7 @@ import java.util.Set;
 
 import com.google.common.collect.ImmutableList;
 
+import suneido.SuDate;
 import suneido.database.immudb.Dbpkg;
 import suneido.database.immudb.HistoryIterator;
 import suneido.database.immudb.Record;
@@ -101,15 +102,28 @@ public class History extends Query {
 		iter.rewind();
 	}
 
+	/** the only index is _date, iter handles date ranges */
 	@Override
 	void select(List<String> index, Record from, Record to) {
-		iter.rewind();
+		iter.select(date(from), date(to));
+	}
+
+	private static SuDate date(Record key) {
+		if (key.size() == 0 || key.getRaw(0).equals(Record.MAX_FIELD))
+			return null;
+		Object x = key.get(0);
+		return (x instanceof SuDate) ? (SuDate) x : null;
 	}
 
 	@Override
 	public void setTransaction(Transaction tran) {
 	}
 
+	@Override
+	boolean reusable() {
+		return false; // iter is from the original transaction
+	}
+
 	@Override
 	public Row get(Dir dir) {
 		Record[] data = (dir == Dir.NEXT) ? iter.getNext() : iter.getPrev();
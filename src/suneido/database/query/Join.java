@@ -22,12 +22,18 @@ public class Join extends Query2 {
 	List<String> joincols;
 	protected Type type;
 	Header hdr1;
+	Row.Col[] joincols1;
 	Row row1;
 	Row row2;
 	short[] cols1;
 	short[] cols2;
 	Row empty2;
 	protected double nrecs = -1;
+	/** set by optimize, use a HashJoin of source2 instead of select */
+	boolean hash = false;
+	private HashJoin hashJoin;
+	/** limit on the estimated size of source2 for hash join (it's in memory) */
+	static final int HASH_MAX_RECORDS = 100_000;
 
 	enum Type {
 		NONE(""), ONE_ONE("1:1"), ONE_N("1:n"), N_ONE("n:1"), N_N("n:n");
@@ -68,7 +74,8 @@ public class Join extends Query2 {
 
 	@Override
 	public String toString() {
-		return "(" + source + " " + name() + " " + type.name + " on "
+		return "(" + source + " " + name() + (hash ? "-HASH" : "") +
+				" " + type.name + " on "
 				+ listToParens(joincols)
 				+ " " + source2 + ")";
 	}
@@ -111,6 +118,24 @@ public class Join extends Query2 {
 	private double opt(Query src1, Query src2, Type type, List<String> index,
 			Set<String> needs1, Set<String> needs2, boolean is_cursor,
 			boolean freeze) {
+		double cost1 = optNested(src1, src2, type, index, needs1, needs2,
+				is_cursor, false);
+		double cost2 = optHash(src1, src2, type, index, needs1, needs2,
+				is_cursor, false);
+		if (freeze) {
+			hash = cost2 < cost1;
+			if (hash)
+				optHash(src1, src2, type, index, needs1, needs2, is_cursor, true);
+			else
+				optNested(src1, src2, type, index, needs1, needs2, is_cursor, true);
+		}
+		return Math.min(cost1, cost2);
+	}
+
+	/** select source2 by joincols for each row from source1 */
+	private double optNested(Query src1, Query src2, Type type, List<String> index,
+			Set<String> needs1, Set<String> needs2, boolean is_cursor,
+			boolean freeze) {
 		/** SELECT_COST needs to be high to discourage N to 1 when N is large */
 		final double SELECT_COST = 1000;
 
@@ -148,6 +173,53 @@ public class Join extends Query2 {
 		if (freeze)
 			src2.optimize(joincols, needs2, noNeeds, is_cursor2, true);
 
+		nrecs = nrecs(type, nrecs1, nrecs2);
+		if (nrecs <= 0)
+			cost2 = 0;
+
+		return cost1 + cost2;
+	}
+
+	/**
+	 * Read all of source2 into a hash table on joincols
+	 * then look up each row from source1.
+	 * Only for n:1 and n:n where source2 doesn't have an index on joincols,
+	 * otherwise the nested select is as good and doesn't use memory.
+	 * Not for cursors because the hash table is specific to a transaction.
+	 */
+	private double optHash(Query src1, Query src2, Type type, List<String> index,
+			Set<String> needs1, Set<String> needs2, boolean is_cursor,
+			boolean freeze) {
+		if (is_cursor || (type != Type.N_ONE && type != Type.N_N))
+			return IMPOSSIBLE;
+		if (! freeze && // is_cursor = true means no temp index
+				src2.optimize(joincols, needs2, noNeeds, true, false) < IMPOSSIBLE)
+			return IMPOSSIBLE;
+
+		double cost2 = src2.optimize(noFields, setUnion(needs2, joincols),
+				noNeeds, false, freeze);
+		if (cost2 >= IMPOSSIBLE)
+			return IMPOSSIBLE;
+		double nrecs2 = src2.nrecords();
+		if (nrecs2 > HASH_MAX_RECORDS)
+			return IMPOSSIBLE;
+
+		double cost1 = src1.optimize(index, needs1, ImmutableSet.copyOf(joincols),
+				is_cursor, freeze);
+		if (cost1 >= IMPOSSIBLE)
+			return IMPOSSIBLE;
+		double nrecs1 = src1.nrecords();
+
+		int keysize = joincols.size() * src2.columnsize();
+		double build = nrecs2 * keysize + 1000; // plus minimum fixed cost
+		double probe = nrecs1 * keysize;
+
+		nrecs = nrecs(type, nrecs1, nrecs2);
+		return cost1 + cost2 + build + probe;
+	}
+
+	private static double nrecs(Type type, double nrecs1, double nrecs2) {
+		double nrecs;
 		switch (type) {
 		case ONE_ONE:
 			nrecs = Math.min(nrecs1, nrecs2);
@@ -164,12 +236,7 @@ public class Join extends Query2 {
 		default:
 			throw unreachable();
 		}
-		nrecs /= 2; // convert from max to guess of expected PROBABLY TOO LOW
-
-		if (nrecs <= 0)
-			cost2 = 0;
-
-		return cost1 + cost2;
+		return nrecs / 2; // convert from max to guess of expected PROBABLY TOO LOW
 	}
 
 	private static Type reverse(Type type) {
@@ -255,12 +322,15 @@ public class Join extends Query2 {
 	public Row get(Dir dir) {
 		if (hdr1 == null) {
 			hdr1 = source.header();
+			joincols1 = hdr1.resolve(joincols);
 			empty2 = new Row(source2.header().size());
+			if (hash)
+				hashJoin = new HashJoin(source2, joincols);
 		}
 		while (true) {
 			if (row2 == null && !next_row1(dir))
 				return null;
-			row2 = source2.get(dir);
+			row2 = hash ? hashJoin.get(dir) : source2.get(dir);
 			if (should_output(row2)) {
 				assert row2 == null || (row1.project(hdr1, joincols).equals(
 						row2.project(source2.header(), joincols)));
@@ -272,8 +342,11 @@ public class Join extends Query2 {
 	protected boolean next_row1(Dir dir) {
 		if (null == (row1 = source.get(dir)))
 			return false;
-		Record key = row1.project(hdr1, joincols);
-		source2.select(joincols, key);
+		Record key = row1.project(joincols1);
+		if (hash)
+			hashJoin.select(key, dir);
+		else
+			source2.select(joincols, key);
 		return true;
 	}
 
@@ -287,6 +360,12 @@ public class Join extends Query2 {
 		row2 = null;
 	}
 
+	@Override
+	boolean reusable() {
+		// the hash table is only built once
+		return ! hash && super.reusable();
+	}
+
 	@Override
 	void select(List<String> index, Record from, Record to) {
 		source.select(index, from, to);
@@ -20,7 +20,8 @@ public class Project extends Query1 {
 	private Strategy strategy = Strategy.NONE;
 	private boolean first = true;
 	private Header projHdr;
-	private Header srcHdr;
+	private Row.Col[] srcCols;
+	private Row.Col[] projCols;
 	private Lookup map = null;
 	private final Keyrange sel = new Keyrange();
 	private boolean rewound = true;
@@ -323,8 +324,10 @@ public class Project extends Query1 {
 	public Row get(Dir dir) {
 		if (first) {
 			first = false;
-			srcHdr = source.header();
+			Header srcHdr = source.header();
 			projHdr = srcHdr.project(flds);
+			srcCols = srcHdr.resolve(flds);
+			projCols = projHdr.resolve(flds);
 			if (strategy == Strategy.LOOKUP) {
 				map = new Lookup();
 				indexed = false;
@@ -390,7 +393,7 @@ public class Project extends Query1 {
 		}
 		Row row;
 		while (null != (row = source.get(dir))) {
-			Record key = row.project(srcHdr, flds);
+			Record key = row.project(srcCols);
 			Object[] data = map.get(key);
 			if (data == null) {
 				map.put(key, row.getRefs());
@@ -406,7 +409,7 @@ public class Project extends Query1 {
 	private void buildLookupIndex() {
 		Row row;
 		while (null != (row = source.get(Dir.NEXT))) {
-			Record key = row.project(projHdr, flds);
+			Record key = row.project(projCols);
 			if (null == map.get(key))
 				map.put(key, row.getRefs());
 		}
@@ -430,6 +433,12 @@ public class Project extends Query1 {
 		rewound = true;
 	}
 
+	@Override
+	boolean reusable() {
+		// lookup strategy accumulates results as it reads
+		return strategy != Strategy.LOOKUP && super.reusable();
+	}
+
 	@Override
 	public void output(Record r) {
 		ckmodify("output");
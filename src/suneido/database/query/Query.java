@@ -30,6 +30,8 @@ public abstract class Query {
 	private List<String> tempindex;
 	public enum Dir { NEXT, PREV }
 	private double cost = 0; // set by setup, used by strategy
+	/** set by QueryCache if this query tree can be cached */
+	Object cacheKey;
 
 	protected static final List<String> noFields = Collections.emptyList();
 	protected static final Set<String> noNeeds = Collections.emptySet();
@@ -56,6 +58,15 @@ public abstract class Query {
 
 	public abstract void setTransaction(Transaction tran);
 
+	/**
+	 * @return Whether this query can be used again (by {@link QueryCache})
+	 * after setTransaction and rewind.
+	 * Overridden by queries that hold data from when they were first read.
+	 */
+	boolean reusable() {
+		return true;
+	}
+
 	// iteration
 	public abstract Header header();
 	public List<String> ordering() { // overridden by QSort
@@ -41,6 +41,11 @@ public abstract class Query1 extends Query {
 		source.setTransaction(tran);
 	}
 
+	@Override
+	boolean reusable() {
+		return source.reusable();
+	}
+
 	// estimated result sizes
 	@Override
 	double nrecords() {
@@ -38,6 +38,11 @@ public abstract class Query2 extends Query1 {
 		source2.setTransaction(tran);
 	}
 
+	@Override
+	boolean reusable() {
+		return source.reusable() && source2.reusable();
+	}
+
 	@Override
 	public Header header() {
 		return new Header(source.header(), source2.header());
@@ -0,0 +1,126 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.query;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import suneido.database.immudb.Transaction;
+import suneido.database.server.ServerData;
+import suneido.util.ThreadSafe;
+
+/**
+ * Process wide cache of optimized query trees,
+ * so repeated queries can skip parse, transform, optimize, and addindex.
+ * Keyed by the query text, read-only or not
+ * (transactions use different index iterators) and the schema
+ * so a schema change means a miss.
+ * <p>
+ * A query tree can only be used by one query at a time.
+ * A tree is removed from the cache while it is in use
+ * and is put back by release when the query is closed.
+ * It is then rebound with setTransaction and rewind, the same as cursors.
+ * Cursors themselves are long lived and are not cached.
+ * <p>
+ * Queries that use views are not cached because views can change
+ * without changing the schema. Trees that hold data from when they were
+ * first read (e.g. TempIndex) are not reusable, see {@link Query#reusable}
+ * <p>
+ * Capacity can be set with Dbpkg.setOption("query_cache_size", n)
+ */
+@ThreadSafe
+public class QueryCache {
+	static final int DEFAULT_SIZE = 1000;
+	private static volatile Cache<Key,Query> cache = build(DEFAULT_SIZE);
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+
+	private static Cache<Key,Query> build(int size) {
+		return CacheBuilder.newBuilder()
+				.maximumSize(size)
+				.expireAfterAccess(10, TimeUnit.MINUTES)
+				.build();
+	}
+
+	/** Replaces the cache, discarding its contents */
+	public static void setSize(int size) {
+		cache = build(size);
+	}
+
+	/** @return A query tree from the cache if possible, else compiled */
+	public static Query query(Transaction t, ServerData serverData, String s) {
+		if (serverData == null || serverData.hasSviews())
+			return CompileQuery.query(t, serverData, s);
+		Key key = new Key(s, t.isReadonly(), t.schema());
+		Query q = cache.asMap().remove(key);
+		if (q != null) {
+			hits.incrementAndGet();
+			q.setTransaction(t);
+			q.rewind();
+			return q;
+		}
+		misses.incrementAndGet();
+		TreeQueryGenerator generator = new TreeQueryGenerator(t);
+		q = CompileQuery.parse(generator, serverData, s).setup(t);
+		if (! generator.usedView())
+			q.cacheKey = key;
+		return q;
+	}
+
+	/** Called when a query is closed to make its tree available for reuse */
+	public static void release(Query q) {
+		if (q.cacheKey == null || ! q.reusable())
+			return;
+		q.setTransaction(null);
+		cache.put((Key) q.cacheKey, q);
+	}
+
+	public static long hits() {
+		return hits.get();
+	}
+
+	public static long misses() {
+		return misses.get();
+	}
+
+	public static double hitRate() {
+		long h = hits.get();
+		long n = h + misses.get();
+		return n == 0 ? 0 : (double) h / n;
+	}
+
+	private static class Key {
+		final String query;
+		final boolean readonly;
+		final Object schema;
+
+		Key(String query, boolean readonly, Object schema) {
+			this.query = query;
+			this.readonly = readonly;
+			this.schema = schema;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other)
+				return true;
+			if (! (other instanceof Key))
+				return false;
+			Key that = (Key) other;
+			return query.equals(that.query) && readonly == that.readonly &&
+					schema == that.schema;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(query, readonly, System.identityHashCode(schema));
+		}
+	}
+
+}
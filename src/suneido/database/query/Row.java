@@ -14,6 +14,7 @@ import java.util.NoSuchElementException;
 
 import com.google.common.base.MoreObjects;
 
+import suneido.SuInternalError;
 import suneido.SuRecord;
 import suneido.database.immudb.Dbpkg;
 import suneido.database.immudb.Record;
@@ -87,6 +88,13 @@ public class Row {
 		return getraw(find(hdr, col));
 	}
 
+	/** @return The raw value of a column resolved by {@link Header#resolve} */
+	public ByteBuffer getraw(Col c) {
+		int k = find(c);
+		return k == -1 ? Record.MIN_FIELD
+				: data[c.slots[k]].getRaw(c.slots[k + 1]);
+	}
+
 	public Record project(Header hdr, List<String> flds) {
 		RecordBuilder key = new RecordBuilder();
 		for (String f : flds)
@@ -94,11 +102,18 @@ public class Row {
 		return key.build();
 	}
 
+	public Record project(Col[] cols) {
+		RecordBuilder key = new RecordBuilder();
+		for (Col c : cols)
+			key.add(getrawval(c));
+		return key.build();
+	}
+
 	/** used by TempIndex */
-	Record project(Header hdr, List<String> flds, int adr) {
+	Record project(Col[] cols, int adr) {
 		RecordBuilder key = new RecordBuilder();
-		for (String f : flds)
-			key.add(getrawval(hdr, f));
+		for (Col c : cols)
+			key.add(getrawval(c));
 		key.add(adr);
 		return key.build();
 	}
@@ -107,6 +122,15 @@ public class Row {
 		return data[data.length > 1 ? 1 : 0]; // 0 is usually index key
 	}
 
+	/**
+	 * @return The complete data record, for updating or deleting.
+	 * Reads it if the row was built from just the index key.
+	 */
+	Record dataRecord(Transaction t) {
+		Record rec = firstData();
+		return rec.isEmpty() && rec.address() != 0 ? t.input(rec.address()) : rec;
+	}
+
 	ByteBuffer getrawval(Header hdr, String col) {
 		Which w = find(hdr, col);
 		if (w != null)
@@ -115,6 +139,14 @@ public class Row {
 		return Pack.pack(surec(hdr).get(col));
 	}
 
+	ByteBuffer getrawval(Col c) {
+		int k = find(c);
+		if (k != -1)
+			return data[c.slots[k]].getRaw(c.slots[k + 1]);
+		// else rule
+		return Pack.pack(surec(c.hdr).get(c.name));
+	}
+
 	public int address() {
 		return firstData().address();
 	}
@@ -140,6 +172,20 @@ public class Row {
 		return null;
 	}
 
+	/**
+	 * Same as find(Header, String) but without searching the header
+	 * @return The position in c.slots or -1
+	 */
+	private int find(Col c) {
+		int[] slots = c.slots;
+		for (int k = 0; k < slots.length; k += 2) {
+			int di = slots[k];
+			if (di < data.length && data[di] != null && ! data[di].isEmpty())
+				return k;
+		}
+		return -1;
+	}
+
 	public Object getval(Header hdr, String col) {
 		Which w = find(hdr, col);
 		if (w != null || ! hdr.cols.contains(col))
@@ -154,6 +200,21 @@ public class Row {
 		return surec(hdr).get(col);
 	}
 
+	/** Same as getval(Header, String) for a column resolved by Header.resolve */
+	public Object getval(Col c) {
+		int k = find(c);
+		if (k != -1 || ! c.column)
+			return Pack.unpack(k == -1 ? Record.MIN_FIELD
+					: data[c.slots[k]].getRaw(c.slots[k + 1]));
+		if (c.base != null) {
+			k = find(c.base);
+			return (k == -1) ? ""
+				: data[c.base.slots[k]].getString(c.base.slots[k + 1]).toLowerCase();
+		}
+		// else rule
+		return surec(c.hdr).get(c.name);
+	}
+
 	static class Which {
 		int di; // index into flds
 		int ri; // index into flds[i]
@@ -171,6 +232,42 @@ public class Row {
 		}
 	}
 
+	/**
+	 * A column resolved against a header once, at query setup,
+	 * so accessing it per row doesn't search the header or allocate.
+	 * Only valid for rows from that header.
+	 */
+	public static final class Col {
+		final Header hdr;
+		final String name;
+		/** pairs of index into flds and index into flds[i] */
+		final int[] slots;
+		/** whether it is in hdr.columns() i.e. a rule if not found */
+		final boolean column;
+		/** the base field for special _lower! fields */
+		final Col base;
+
+		Col(Header hdr, String name, int[] slots, boolean column, Col base) {
+			this.hdr = hdr;
+			this.name = name;
+			this.slots = slots;
+			this.column = column;
+			this.base = base;
+		}
+
+		public boolean isFor(Header hdr) {
+			return hdr == this.hdr;
+		}
+
+		@Override
+		public String toString() {
+			return MoreObjects.toStringHelper(this)
+					.addValue(name)
+					.addValue(Arrays.toString(slots))
+					.toString();
+		}
+	}
+
 	public void setTransaction(DbmsTran tran) {
 		this.tran = tran;
 	}
@@ -205,38 +302,67 @@ public class Row {
 	}
 
 	/**
-	 * Used by TempIndex.
-	 * Adds to refs either Integers for database records,
-	 * or ByteBuffers for in-memory records (e.g. from Extend)
+	 * Used by TempIndex for rows that are not from a single table.
+	 * Appends the row's data records to the key,
+	 * so they are stored (and spilled) along with the key.
+	 * Each data record is two fields, a kind and a value:
+	 * the address of a database record,
+	 * the buffer of an in-memory record (e.g. from Extend),
+	 * or, for in-memory records too large to add to the key,
+	 * the position in heap where the record is added instead.
 	 * NOTE: Depends on actual data being in every second data record.
-	 * @return The starting position in refs.
 	 */
-	int getRefs(List<Object> refs) {
+	Record withData(Record key, List<Object> heap) {
 		assert data.length > 1 && (data.length % 2) == 0;
-		int offset = refs.size();
-		for (int di = 1; di < data.length; di += 2)
-			refs.add(checkNotNull(data[di].getRef()));
-		refs.add(END);
-		return offset;
+		RecordBuilder rb = new RecordBuilder().addAll(key);
+		int size = key.bufSize();
+		for (int di = 1; di < data.length; di += 2) {
+			Object ref = checkNotNull(data[di].getRef());
+			if (ref instanceof Integer) {
+				int adr = (Integer) ref;
+				rb.add(ADDRESS).add(adr);
+			} else {
+				ByteBuffer buf = data[di].getBuffer(); // ref may not be positioned
+				if (size + buf.remaining() <= MAX_DATA_SIZE) {
+					rb.add(INLINE).add(buf);
+					size += buf.remaining();
+				} else {
+					rb.add(HEAP).add(heap.size());
+					heap.add(buf);
+				}
+			}
+		}
+		return rb.build();
 	}
-	static Row fromRefs(Transaction t, List<Object> refs, int offset) {
-		int n = size(refs, offset);
+	private static final int ADDRESS = 0;
+	private static final int INLINE = 1;
+	private static final int HEAP = 2;
+	/** keep keys within what a heap RecordStore can allocate */
+	private static final int MAX_DATA_SIZE = 8 * 1024;
+
+	/** The reverse of withData, data starts at the i'th field of key */
+	static Row fromData(Transaction t, Record key, int i, List<Object> heap) {
+		int n = (key.size() - i) / 2;
 		Record[] data = new Record[2 * n];
 		int di = 0;
-		for (int i = 0; i < n; ++i) {
+		for (; i < key.size(); i += 2) {
 			data[di++] = null;
-			data[di++] = t.fromRef(refs.get(offset + i));
+			switch (key.getInt(i)) {
+			case ADDRESS:
+				data[di++] = t.input(key.getInt(i + 1));
+				break;
+			case INLINE:
+				data[di++] = t.fromRef(key.getRaw(i + 1));
+				break;
+			case HEAP:
+				data[di++] = t.fromRef(heap.get(key.getInt(i + 1)));
+				break;
+			default:
+				throw SuInternalError.unreachable();
+			}
 		}
 		return new Row(data);
 	}
-	private static int size(List<Object> refs, int i) {
-		int n = 0;
-		for (; refs.get(i) != END; ++i)
-			++n;
-		return n;
-	}
-
-	private final static Object END = new Object();
 
 	public Iterator<Entry> iterator(Header hdr) {
 		return new Iter(hdr.flds);
@@ -69,6 +69,7 @@ public class Select extends Query1 {
 	int n_out = 0;
 	private TIntHashSet filterSet;
 	private Header hdr;
+	private TieredExpr eval;
 	private Transaction tran;
 
 	public Select(Transaction tran, Query source, Expr expr) {
@@ -348,7 +349,8 @@ public class Select extends Query1 {
 			return cost;
 
 		source_index = primary;
-		tbl.select_index(source_index);
+		tbl.select_index(source_index, primary.containsAll(select_needs) &&
+				primary.containsAll(setUnion(needs, firstneeds)));
 
 		return cost;
 	}
@@ -658,6 +660,11 @@ public class Select extends Query1 {
 		this.tran = tran;
 	}
 
+	@Override
+	boolean reusable() {
+		return nil(filter) && super.reusable(); // filterSet is only built once
+	}
+
 	// get ----------------------------------------------------------
 
 	@Override
@@ -701,6 +708,7 @@ public class Select extends Query1 {
 	private void iterate_setup() {
 		processFilters();
 		hdr = source.header();
+		eval = new TieredExpr(expr);
 		ranges = selects(source_index, iselects(source_index));
 		if (tracing(SELECT))
 			trace(SELECT, "ranges: " + ranges);
@@ -710,9 +718,10 @@ public class Select extends Query1 {
 		if (nil(filter))
 			return;
 
+		boolean keyOnly = tbl.keyOnly;
 		for (List<String> ix : filter) {
 			TIntHashSet newset = new TIntHashSet();
-			tbl.set_index(ix);
+			tbl.set_index(ix, true); // filters only need the keys
 			for (Keyrange range : selects(ix, iselects(ix))) {
 				for (source.select(ix, range.org, range.end);
 						null != source.get(Dir.NEXT); )
@@ -722,7 +731,7 @@ public class Select extends Query1 {
 			}
 			filterSet = newset;
 		}
-		tbl.set_index(source_index); // restore primary index
+		tbl.set_index(source_index, keyOnly); // restore primary index
 
 		// remove filter isels - no longer needed
 		for (List<String> idx : filter)
@@ -810,7 +819,7 @@ public class Select extends Query1 {
 		}
 		// finally check remaining expressions
 		row.setTransaction(new DbmsTranLocal(tran));
-		return expr.eval(hdr, row) == Boolean.TRUE;
+		return eval.eval(hdr, row) == Boolean.TRUE;
 	}
 
 	private boolean matches(List<String> idx, Record key) {
@@ -826,6 +835,7 @@ public class Select extends Query1 {
 	public void rewind() {
 		source.rewind();
 		rewound = true;
+		n_in = n_out = 0;
 	}
 
 	@Override
@@ -1086,6 +1096,7 @@ public class Select extends Query1 {
 	public void close() {
 		if (tracing(SLOWQUERY) && n_in > 100 && n_in > 100 * n_out)
 			trace(SLOWQUERY, n_in + "->" + n_out + "  " + this);
+		n_in = n_out = 0; // in case the tree is reused
 		super.close();
 	}
 
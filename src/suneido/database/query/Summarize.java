@@ -33,6 +33,8 @@ public class Summarize extends Query1 {
 	private boolean first = true;
 	private boolean rewound = true;
 	private Header hdr;
+	Row.Col[] byCols;
+	Row.Col[] onCols;
 	private SummarizeStrategy strategyImp;
 	final boolean wholeRecord;
 
@@ -109,7 +111,7 @@ public class Summarize extends Query1 {
 				setUnion(without(on, null), setDifference(needs, cols));
 
 		double seqCost = seqCost(index, srcneeds, is_cursor, false);
-		double idxCost = idxCost(is_cursor, false);
+		double idxCost = idxCost(srcneeds, is_cursor, false);
 		double mapCost = mapCost(index, srcneeds, is_cursor, false);
 
 		if (!freeze)
@@ -118,7 +120,7 @@ public class Summarize extends Query1 {
 		if (seqCost <= idxCost && seqCost <= mapCost)
 			return seqCost(index, srcneeds, is_cursor, true);
 		else if (idxCost <= mapCost)
-			return idxCost(is_cursor, true);
+			return idxCost(srcneeds, is_cursor, true);
 		else
 			return mapCost(index, srcneeds, is_cursor, true);
 	}
@@ -160,13 +162,14 @@ public class Summarize extends Query1 {
 		}
 	}
 
-	private double idxCost(boolean is_cursor, boolean freeze) {
+	private double idxCost(Set<String> srcneeds, boolean is_cursor,
+			boolean freeze) {
 		if (! minmax1())
 			return IMPOSSIBLE;
 		// using optimize1 to bypass tempindex
 		// dividing by nrecords since we're only reading one record
 		double nr = Math.max(1, source.nrecords());
-		double cost = source.optimize1(on, noNeeds, noNeeds, is_cursor, freeze) / nr;
+		double cost = source.optimize1(on, srcneeds, noNeeds, is_cursor, freeze) / nr;
 		if (freeze) {
 			strategy = Strategy.IDX;
 			via = on;
@@ -254,6 +257,8 @@ public class Summarize extends Query1 {
 	private void iterate_setup() {
 		first = false;
 		hdr = source.header();
+		byCols = hdr.resolve(by);
+		onCols = hdr.resolve(on);
 		strategyImp =
 				(strategy == Strategy.MAP) ? new SummarizeStrategyMap(this)
 				: (strategy == Strategy.IDX) ? new SummarizeStrategyIdx(this)
@@ -275,6 +280,12 @@ public class Summarize extends Query1 {
 		rewound = true;
 	}
 
+	@Override
+	boolean reusable() {
+		// map strategy only processes the source once
+		return strategy != Strategy.MAP && super.reusable();
+	}
+
 	@Override
 	void select(List<String> index, Record from, Record to) {
 		if (first)
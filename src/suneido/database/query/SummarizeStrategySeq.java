@@ -53,12 +53,12 @@ public class SummarizeStrategySeq extends SummarizeStrategy {
 			if (nextrow == null)
 				break ;
 			for (int i = 0; i < sums.size(); ++i)
-				sums.get(i).add(nextrow, nextrow.getval(q.getHdr(), q.on.get(i)));
+				sums.get(i).add(nextrow, nextrow.getval(q.onCols[i]));
 			nextrow = source.get(dir);
 		} while (equal());
 		// output after reading a group
 
-		Record byRec = currow.project(q.getHdr(), q.by);
+		Record byRec = currow.project(q.byCols);
 		Row row = makeRow(byRec, sums);
 		if (q.wholeRecord)
 			row = new Row(sums.get(0).getRow(), row);
@@ -68,8 +68,8 @@ public class SummarizeStrategySeq extends SummarizeStrategy {
 	private boolean equal() {
 		if (nextrow == null)
 			return false;
-		for (String f : q.by)
-			if (!currow.getval(q.getHdr(), f).equals(nextrow.getval(q.getHdr(), f)))
+		for (Row.Col c : q.byCols)
+			if (!currow.getval(c).equals(nextrow.getval(c)))
 				return false;
 		return true;
 	}
@@ -37,6 +37,8 @@ public class Table extends Query {
 	private Transaction tran;
 	final boolean singleton; // i.e. key()
 	private List<String> idx = noFields;
+	/** whether idx has all the needed columns so rows come from just the keys */
+	boolean keyOnly = false;
 	private final Impl impl;
 	IndexIter iter;
 
@@ -101,18 +103,24 @@ public class Table extends Query {
 					"\tidx3 " + idx3 + " cost3 " + cost3);
 
 		if (cost1 <= cost2 && cost1 <= cost3) {
-			if (freeze)
+			if (freeze) {
 				idx = (idx1 == null) ? null : idx1.index;
+				keyOnly = (idx1 != null); // cost1 doesn't include reading data
+			}
 			return cost1;
 		} else if (cost2 <= cost1 && cost2 <= cost3) {
 			assert idx2 != null; // suppress warning
-			if (freeze)
+			if (freeze) {
 				idx = idx2.index;
+				keyOnly = false;
+			}
 			return cost2;
 		} else {
 			assert idx3 != null; // suppress warning
-			if (freeze)
+			if (freeze) {
 				idx = idx3.index;
+				keyOnly = false;
+			}
 			return cost3;
 		}
 	}
@@ -201,9 +209,13 @@ public class Table extends Query {
 		// add index.size() to favor shorter indexes
 	}
 
-	/* package */void select_index(List<String> index) {
-		// used by Select::optimize
+	/**
+	 * Used by Select::optimize
+	 * @param keyOnly Whether the index has all the needed columns
+	 */
+	/* package */void select_index(List<String> index, boolean keyOnly) {
 		idx = index;
+		this.keyOnly = keyOnly;
 	}
 
 	@Override
@@ -243,7 +255,9 @@ public class Table extends Query {
 			return null;
 		}
 
-		Row row = new Row(iter.curKey(), impl.process(tran.input(iter.keyadr())));
+		Row row = new Row(iter.curKey(), keyOnly
+				? Record.addressOnly(iter.keyadr()) // don't read the data
+				: impl.process(tran.input(iter.keyadr())));
 
 		if (singleton && !sel.contains(row.project(hdr, idx))) {
 			rewound = true;
@@ -294,8 +308,10 @@ public class Table extends Query {
 		rewound = true;
 	}
 
-	void set_index(List<String> index) {
+	/** Used by Select filters, which only need the keys */
+	void set_index(List<String> index, boolean keyOnly) {
 		idx = index;
+		this.keyOnly = keyOnly;
 		set_ix();
 		rewound = true;
 	}
@@ -314,8 +330,11 @@ public class Table extends Query {
 		tran.addRecord(table, r);
 	}
 
+	/** Drops the iterator so a cached tree doesn't keep the old btrees */
 	@Override
 	public void close() {
+		iter = null;
+		rewound = true;
 	}
 
 	private class Impl {
@@ -12,13 +12,11 @@ import static suneido.util.Verify.verify;
 import java.util.List;
 
 import suneido.SuException;
-import suneido.database.immudb.Dbpkg;
 import suneido.database.immudb.Record;
 import suneido.database.immudb.RecordStore;
 import suneido.database.immudb.Transaction;
 import suneido.util.ArraysList;
 import suneido.util.BlockList;
-import suneido.util.IntComparator;
 
 public class TempIndex extends Query1 {
 	private final List<String> order;
@@ -26,14 +24,10 @@ public class TempIndex extends Query1 {
 	private Transaction tran;
 	private boolean first = true;
 	private boolean rewound = true;
+	private ExternalSort sorter;
 	private RecordStore stor;
-	private final ArraysList<Object> refs = new ArraysList<>();
-	private final IntComparator cmp = (int xi, int yi) -> {
-		Record xkey = stor.get(xi);
-		Record ykey = stor.get(yi);
-		return xkey.compareTo(ykey);
-	};
-	private final BlockList index = new BlockList(cmp);
+	/** large in-memory records, see {@link Row#withData} */
+	private final ArraysList<Object> heap = new ArraysList<>();
 	private BlockList.Iter iter;
 	private final Keyrange sel = new Keyrange();
 	private final boolean single;
@@ -46,12 +40,25 @@ public class TempIndex extends Query1 {
 		single = source.singleDbTable();
 	}
 
+	/**
+	 * Set the heap memory (bytes) used for keys
+	 * before spilling to a temporary file, see {@link ExternalSort}
+	 */
+	public static void setMemoryLimit(int bytes) {
+		ExternalSort.memoryLimit = bytes;
+	}
+
 	@Override
 	public void setTransaction(Transaction tran) {
 		this.tran = tran;
 		super.setTransaction(tran);
 	}
 
+	@Override
+	boolean reusable() {
+		return false; // index is only built once
+	}
+
 	@Override
 	public String toString() {
 		return source.toString() + " TEMPINDEX" + listToParens(order)
@@ -83,26 +90,32 @@ public class TempIndex extends Query1 {
 			rewound = true;
 			return null;
 		}
+		if (! single)
+			return Row.fromData(tran, key, order.size() + 1, heap);
 		int adr = key.getInt(key.size() - 1);
-		return single
-				? new Row(new Record[] { null, tran.input(adr) })
-				: Row.fromRefs(tran, refs, adr);
+		return new Row(new Record[] { null, tran.input(adr) });
 	}
 
+	/**
+	 * For a single table the keys end with the record address.
+	 * Otherwise they end with a sequence number (to keep duplicates in order)
+	 * followed by the row data, see {@link Row#withData}
+	 */
 	private void iterate_setup(Dir dir) {
-		stor = Dbpkg.recordStore();
-		Header srchdr = source.header();
+		sorter = new ExternalSort();
+		Row.Col[] cols = source.header().resolve(order);
 		Row row;
-		while (null != (row = source.get(Dir.NEXT))) {
-			int adr = single ? row.firstData().address() : row.getRefs(refs);
+		for (int seq = 0; null != (row = source.get(Dir.NEXT)); ++seq) {
+			int adr = single ? row.firstData().address() : seq;
 			assert ! single || adr != 0;
-			Record key = row.project(srchdr, order, adr);
+			Record key = row.project(cols, adr);
 			if (key.bufSize() > 4000)
 				throw new SuException("temp index entry size > 4000: " + order);
-			index.add(stor.add(key));
+			sorter.add(single ? key : row.withData(key, heap));
 		}
-		index.sort();
-		iter = index.iter();
+		sorter.sort();
+		stor = sorter.stor();
+		iter = sorter.index().iter();
 	}
 
 	@Override
@@ -110,6 +123,18 @@ public class TempIndex extends Query1 {
 		rewound = true;
 	}
 
+	@Override
+	public void close() {
+		if (sorter != null && sorter.spilled()) {
+			sorter.close(); // remove temporary file
+			sorter = null;
+			stor = null;
+			heap.clear();
+			first = rewound = true; // rebuild if used again
+		}
+		super.close();
+	}
+
 	@Override
 	void select(List<String> index, Record from, Record to) {
 		verify(startsWith(order, index));
@@ -21,6 +21,7 @@ import suneido.database.query.expr.*;
 public class TreeQueryGenerator extends QueryGenerator<Object> {
 
 	private final Transaction tran;
+	private boolean usedView = false;
 
 	public TreeQueryGenerator(Transaction tran) {
 		this.tran = tran;
@@ -284,7 +285,15 @@ public class TreeQueryGenerator extends QueryGenerator<Object> {
 
 	@Override
 	public String getView(String name) {
-		return tran.getView(name);
+		String def = tran.getView(name);
+		if (def != null)
+			usedView = true;
+		return def;
+	}
+
+	/** Used by {@link QueryCache} */
+	boolean usedView() {
+		return usedView;
 	}
 
 	@Override
@@ -65,7 +65,7 @@ public class Update extends QueryAction {
 			for (int i = 0; i < fields.size(); ++i)
 				surec.put(fields.get(i), exprs.get(i).eval(hdr, row));
 			Record newrec = surec.toDbRecord(hdr);
-			tran.updateRecord(q.tblnum(), row.firstData(), newrec);
+			tran.updateRecord(q.tblnum(), row.dataRecord(tran), newrec);
 			++n;
 		}
 		return n;
@@ -99,7 +99,7 @@ public class BinOp extends Expr {
 
 	// override Ops.cmp to make "" < all other values
 	// to match packed comparison
-	private static int cmp(Object x, Object y) {
+	static int cmp(Object x, Object y) {
 		if (x == y)
 			return 0;
 		if ("".equals(x))
@@ -125,13 +125,18 @@ public class BinOp extends Expr {
 		return left.isField(fields) && right instanceof Constant;
 	}
 
+	/** Whether eval will use raw comparison, also used by ExprCompiler */
+	boolean raw(Header hdr) {
+		return isTerm && hdr.fields().equals(isTermFields);
+	}
+
 	@Override
 	public Object eval(Header hdr, Row row) {
 		// only use raw comparison if isTerm has been used (by Select)
 		// NOTE: do NOT want to use raw for Extend because of rule issues
-		if (isTerm && hdr.fields().equals(isTermFields)) {
+		if (raw(hdr)) {
 			Identifier id = (Identifier) left;
-			ByteBuffer field = row.getraw(hdr, id.ident);
+			ByteBuffer field = row.getraw(id.col(hdr));
 			Constant c = (Constant) right;
 			ByteBuffer value = c.packed;
 			boolean result;
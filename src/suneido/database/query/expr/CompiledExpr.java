@@ -0,0 +1,53 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.query.expr;
+
+import java.nio.ByteBuffer;
+
+import suneido.database.query.Header;
+import suneido.database.query.Row;
+
+/**
+ * Base class for the classes generated by {@link ExprCompiler}.
+ * The generated code is only valid for the header it was compiled for,
+ * with any other header the original expression is interpreted.
+ * <p>
+ * Members are public or protected because the generated classes
+ * are loaded by their own class loader.
+ */
+public abstract class CompiledExpr {
+	protected final Expr expr;
+	protected final Header hdr;
+	protected final Object[] constants;
+	protected final ByteBuffer[] packed;
+	protected final Expr[] fallbacks;
+
+	protected CompiledExpr(Expr expr, Header hdr, Object[] constants,
+			ByteBuffer[] packed, Expr[] fallbacks) {
+		this.expr = expr;
+		this.hdr = hdr;
+		this.constants = constants;
+		this.packed = packed;
+		this.fallbacks = fallbacks;
+	}
+
+	public Object eval(Header hdr, Row row) {
+		return hdr == this.hdr ? eval2(hdr, row) : expr.eval(hdr, row);
+	}
+
+	/** generated */
+	protected abstract Object eval2(Header hdr, Row row);
+
+	/** called by generated code, see {@link BinOp} */
+	public static int cmp(Object x, Object y) {
+		return BinOp.cmp(x, y);
+	}
+
+	@Override
+	public String toString() {
+		return "compiled " + expr;
+	}
+
+}
@@ -0,0 +1,385 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.query.expr;
+
+import static org.objectweb.asm.Opcodes.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import suneido.SuException;
+import suneido.compiler.Token;
+import suneido.database.query.Header;
+import suneido.database.query.Row;
+import suneido.runtime.Ops;
+import suneido.util.ByteBuffers;
+
+/**
+ * Generates a Java class (using ASM) to evaluate a query expression
+ * instead of interpreting the Expr tree.
+ * Used (via {@link TieredExpr}) by Select and Extend.
+ * <p>
+ * Handles Constant, Identifier, BinOp, And, Or, UnOp, and TriOp.
+ * Other nodes (e.g. In, FunCall) are interpreted by calling their eval.
+ * Terms that BinOp would compare raw (packed) are compiled to compare
+ * the packed field directly with the packed constant.
+ * And, Or, not, and comparisons are done with primitive booleans
+ * rather than boxing intermediate results.
+ * <p>
+ * Constants, columns, and fallbacks are passed to the constructor
+ * so the generated code only depends on the shape of the expression.
+ * Classes are cached by their code so each shape is only loaded once.
+ */
+public class ExprCompiler {
+	private static final String COMPILED_EXPR = Type.getInternalName(CompiledExpr.class);
+	private static final String OPS = Type.getInternalName(Ops.class);
+	private static final String ROW = Type.getInternalName(Row.class);
+	private static final String COL = Type.getInternalName(Row.Col.class);
+	private static final String EXPR = Type.getInternalName(Expr.class);
+	private static final String BYTEBUFFER = Type.getInternalName(ByteBuffer.class);
+	private static final String INIT_DESC = "(L" + EXPR + ";L" +
+			Type.getInternalName(Header.class) + ";[Ljava/lang/Object;[L" +
+			BYTEBUFFER + ";[L" + EXPR + ";)V";
+	private static final String EVAL_DESC = "(L" +
+			Type.getInternalName(Header.class) + ";L" + ROW + ";)Ljava/lang/Object;";
+	private static final int THIS = 0;
+	private static final int HDR = 1;
+	private static final int ROWVAR = 2;
+	private static final String NAME = "suneido/code/QueryExpr";
+	private static final Cache<ByteBuffer, Class<?>> classes =
+			CacheBuilder.newBuilder().maximumSize(1000).build();
+	private final Header hdr;
+	private final List<Object> constants = new ArrayList<>();
+	private final List<ByteBuffer> packed = new ArrayList<>();
+	private final List<Expr> fallbacks = new ArrayList<>();
+	private MethodVisitor mv;
+
+	private ExprCompiler(Header hdr) {
+		this.hdr = hdr;
+	}
+
+	/**
+	 * @return A compiled version of expr for hdr,
+	 * or null if compiling would not help e.g. a single field
+	 */
+	public static CompiledExpr compile(Expr expr, Header hdr) {
+		if (! worthCompiling(expr))
+			return null;
+		return new ExprCompiler(hdr).compile(expr);
+	}
+
+	private static boolean worthCompiling(Expr e) {
+		return e instanceof BinOp || e instanceof Multi && ! (e instanceof FunCall) ||
+				e instanceof UnOp || e instanceof TriOp;
+	}
+
+	private CompiledExpr compile(Expr expr) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+		cw.visit(V1_8, ACC_PUBLIC + ACC_SUPER, NAME, null, COMPILED_EXPR, null);
+		genInit(cw);
+		mv = cw.visitMethod(ACC_PROTECTED, "eval2", EVAL_DESC, null, null);
+		mv.visitCode();
+		emit(expr);
+		mv.visitInsn(ARETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+		byte[] code = cw.toByteArray();
+		try {
+			// each class has its own loader so they can have the same name
+			Class<?> c = classes.asMap().computeIfAbsent(ByteBuffer.wrap(code),
+					k -> new Loader().defineClass(NAME.replace('/', '.'), code));
+			return (CompiledExpr) c.getConstructors()[0].newInstance(expr, hdr,
+					constants.toArray(),
+					packed.toArray(new ByteBuffer[0]),
+					fallbacks.toArray(new Expr[0]));
+		} catch (InstantiationException | IllegalAccessException |
+				InvocationTargetException e) {
+			throw new SuException("ExprCompiler newInstance error: " + e);
+		}
+	}
+
+	private static void genInit(ClassWriter cw) {
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", INIT_DESC, null, null);
+		mv.visitCode();
+		for (int i = 0; i <= 5; ++i)
+			mv.visitVarInsn(ALOAD, i);
+		mv.visitMethodInsn(INVOKESPECIAL, COMPILED_EXPR, "<init>", INIT_DESC, false);
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	/** generate code that leaves the value of e on the stack */
+	private void emit(Expr e) {
+		if (e instanceof Constant)
+			constant(((Constant) e).value);
+		else if (e instanceof Identifier)
+			getval(((Identifier) e).ident);
+		else if (e instanceof BinOp)
+			binop((BinOp) e);
+		else if (e instanceof And || e instanceof Or)
+			boxed(e);
+		else if (e instanceof UnOp)
+			unop((UnOp) e);
+		else if (e instanceof TriOp)
+			triop((TriOp) e);
+		else
+			fallback(e);
+	}
+
+	private void binop(BinOp e) {
+		switch (e.op) {
+		case IS: case ISNT: case LT: case LTE: case GT: case GTE:
+			boxed(e);
+			return;
+		default:
+		}
+		emit(e.left);
+		emit(e.right);
+		String method = opsMethod(e.op.toString());
+		mv.visitMethodInsn(INVOKESTATIC, OPS, method,
+				opsDescriptor(method), false);
+	}
+
+	private static String opsMethod(String op) {
+		switch (op) {
+		case "SUBSCRIPT": return "get";
+		default: return op.toLowerCase();
+		}
+	}
+
+	private static String opsDescriptor(String method) {
+		try {
+			return Type.getMethodDescriptor(
+					Ops.class.getMethod(method, Object.class, Object.class));
+		} catch (NoSuchMethodException e) {
+			throw new SuException("ExprCompiler: no Ops." + method);
+		}
+	}
+
+	private void unop(UnOp e) {
+		switch (e.op) {
+		case NOT:
+			boxed(e);
+			break;
+		case ADD:
+			emit(e.expr);
+			break;
+		case SUB:
+			emit(e.expr);
+			mv.visitMethodInsn(INVOKESTATIC, OPS, "uminus",
+					"(Ljava/lang/Object;)Ljava/lang/Number;", false);
+			break;
+		case BITNOT:
+			emit(e.expr);
+			mv.visitMethodInsn(INVOKESTATIC, OPS, "bitnot",
+					"(Ljava/lang/Object;)Ljava/lang/Integer;", false);
+			break;
+		default:
+			fallback(e);
+		}
+	}
+
+	private void triop(TriOp e) {
+		Label iffalse = new Label();
+		Label end = new Label();
+		bool(e.expr);
+		mv.visitJumpInsn(IFEQ, iffalse);
+		emit(e.iftrue);
+		mv.visitJumpInsn(GOTO, end);
+		mv.visitLabel(iffalse);
+		emit(e.iffalse);
+		mv.visitLabel(end);
+	}
+
+	private void boxed(Expr e) {
+		bool(e);
+		mv.visitMethodInsn(INVOKESTATIC, "java/lang/Boolean", "valueOf",
+				"(Z)Ljava/lang/Boolean;", false);
+	}
+
+	/**
+	 * generate code that leaves a primitive boolean on the stack,
+	 * equivalent to Ops.toBoolean_(e.eval(hdr, row))
+	 */
+	private void bool(Expr e) {
+		if (e instanceof And)
+			andor(((And) e).exprs, IFEQ);
+		else if (e instanceof Or)
+			andor(((Or) e).exprs, IFNE);
+		else if (e instanceof UnOp && ((UnOp) e).op == Token.NOT) {
+			bool(((UnOp) e).expr);
+			mv.visitInsn(ICONST_1);
+			mv.visitInsn(IXOR);
+		} else if (e instanceof BinOp && ((BinOp) e).raw(hdr))
+			raw((BinOp) e);
+		else if (e instanceof BinOp && isCompare((BinOp) e))
+			compare((BinOp) e);
+		else {
+			emit(e);
+			mv.visitMethodInsn(INVOKESTATIC, OPS, "toBoolean_",
+					"(Ljava/lang/Object;)Z", false);
+		}
+	}
+
+	/** @param shortCircuit IFEQ for and, IFNE for or */
+	private void andor(List<Expr> exprs, int shortCircuit) {
+		Label done = new Label();
+		Label end = new Label();
+		for (Expr e : exprs) {
+			bool(e);
+			mv.visitJumpInsn(shortCircuit, done);
+		}
+		mv.visitInsn(shortCircuit == IFEQ ? ICONST_1 : ICONST_0);
+		mv.visitJumpInsn(GOTO, end);
+		mv.visitLabel(done);
+		mv.visitInsn(shortCircuit == IFEQ ? ICONST_0 : ICONST_1);
+		mv.visitLabel(end);
+	}
+
+	private static boolean isCompare(BinOp e) {
+		switch (e.op) {
+		case IS: case ISNT: case LT: case LTE: case GT: case GTE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private void compare(BinOp e) {
+		emit(e.left);
+		emit(e.right);
+		switch (e.op) {
+		case IS:
+		case ISNT:
+			mv.visitMethodInsn(INVOKESTATIC, OPS, "is",
+					"(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Boolean;", false);
+			mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Boolean", "booleanValue",
+					"()Z", false);
+			if (e.op == Token.ISNT) {
+				mv.visitInsn(ICONST_1);
+				mv.visitInsn(IXOR);
+			}
+			break;
+		default:
+			mv.visitMethodInsn(INVOKESTATIC, COMPILED_EXPR, "cmp",
+					"(Ljava/lang/Object;Ljava/lang/Object;)I", false);
+			intToBool(e);
+		}
+	}
+
+	/** compare the packed field to the packed constant, see BinOp.eval */
+	private void raw(BinOp e) {
+		mv.visitVarInsn(ALOAD, ROWVAR);
+		col(((Identifier) e.left).ident);
+		mv.visitMethodInsn(INVOKEVIRTUAL, ROW, "getraw",
+				"(L" + COL + ";)L" + BYTEBUFFER + ";", false);
+		mv.visitVarInsn(ALOAD, THIS);
+		mv.visitFieldInsn(GETFIELD, COMPILED_EXPR, "packed", "[L" + BYTEBUFFER + ";");
+		iconst(packed.size());
+		mv.visitInsn(AALOAD);
+		packed.add(((Constant) e.right).packed);
+		switch (e.op) {
+		case IS:
+		case ISNT:
+			mv.visitMethodInsn(INVOKEVIRTUAL, BYTEBUFFER, "equals",
+					"(Ljava/lang/Object;)Z", false);
+			if (e.op == Token.ISNT) {
+				mv.visitInsn(ICONST_1);
+				mv.visitInsn(IXOR);
+			}
+			break;
+		default:
+			mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(ByteBuffers.class),
+					"bufferUcompare", "(L" + BYTEBUFFER + ";L" + BYTEBUFFER + ";)I",
+					false);
+			intToBool(e);
+		}
+	}
+
+	/** converts a comparison result (int) to a boolean */
+	private void intToBool(BinOp e) {
+		int ifop;
+		switch (e.op) {
+		case LT: ifop = IFLT; break;
+		case LTE: ifop = IFLE; break;
+		case GT: ifop = IFGT; break;
+		case GTE: ifop = IFGE; break;
+		default: throw new SuException("ExprCompiler unexpected " + e.op);
+		}
+		Label yes = new Label();
+		Label end = new Label();
+		mv.visitJumpInsn(ifop, yes);
+		mv.visitInsn(ICONST_0);
+		mv.visitJumpInsn(GOTO, end);
+		mv.visitLabel(yes);
+		mv.visitInsn(ICONST_1);
+		mv.visitLabel(end);
+	}
+
+	private void constant(Object value) {
+		mv.visitVarInsn(ALOAD, THIS);
+		mv.visitFieldInsn(GETFIELD, COMPILED_EXPR, "constants", "[Ljava/lang/Object;");
+		iconst(constants.size());
+		mv.visitInsn(AALOAD);
+		constants.add(value);
+	}
+
+	private void getval(String field) {
+		mv.visitVarInsn(ALOAD, ROWVAR);
+		col(field);
+		mv.visitMethodInsn(INVOKEVIRTUAL, ROW, "getval",
+				"(L" + COL + ";)Ljava/lang/Object;", false);
+	}
+
+	/** the field resolved at compile time since the code is specific to hdr */
+	private void col(String field) {
+		constant(hdr.resolve(field));
+		mv.visitTypeInsn(CHECKCAST, COL);
+	}
+
+	/** interpret nodes that aren't handled */
+	private void fallback(Expr e) {
+		mv.visitVarInsn(ALOAD, THIS);
+		mv.visitFieldInsn(GETFIELD, COMPILED_EXPR, "fallbacks", "[L" + EXPR + ";");
+		iconst(fallbacks.size());
+		mv.visitInsn(AALOAD);
+		mv.visitVarInsn(ALOAD, HDR);
+		mv.visitVarInsn(ALOAD, ROWVAR);
+		mv.visitMethodInsn(INVOKEVIRTUAL, EXPR, "eval", EVAL_DESC, false);
+		fallbacks.add(e);
+	}
+
+	private void iconst(int i) {
+		if (i <= 5)
+			mv.visitInsn(ICONST_0 + i);
+		else if (i <= Byte.MAX_VALUE)
+			mv.visitIntInsn(BIPUSH, i);
+		else
+			mv.visitIntInsn(SIPUSH, i);
+	}
+
+	private static class Loader extends ClassLoader {
+		Loader() {
+			super(ExprCompiler.class.getClassLoader());
+		}
+
+		Class<?> defineClass(String name, byte[] b) {
+			return defineClass(name, b, 0, b.length);
+		}
+	}
+
+}
@@ -12,6 +12,7 @@ import suneido.database.query.Row;
 
 public class Identifier extends Expr {
 	public String ident;
+	private Row.Col col; // resolved for the last header used
 
 	public static Expr valueOf(String s) {
 		return new Identifier(s);
@@ -38,7 +39,15 @@ public class Identifier extends Expr {
 
 	@Override
 	public Object eval(Header hdr, Row row) {
-		return row.getval(hdr, ident);
+		return row.getval(col(hdr));
+	}
+
+	/** @return This column resolved for hdr, cached since hdr rarely changes */
+	Row.Col col(Header hdr) {
+		Row.Col c = col;
+		if (c == null || ! c.isFor(hdr))
+			col = c = hdr.resolve(ident);
+		return c;
 	}
 
 	@Override
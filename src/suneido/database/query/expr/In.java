@@ -91,7 +91,7 @@ public class In extends Expr {
 		// NOTE: do NOT want to use raw for Extend because of rule issues
 		if (isTerm && hdr.fields().equals(isTermFields)) {
 			Identifier id = (Identifier) expr;
-			ByteBuffer value = row.getraw(hdr, id.ident);
+			ByteBuffer value = row.getraw(id.col(hdr));
 			for (ByteBuffer v : packed)
 				if (v.equals(value))
 					return Boolean.TRUE;
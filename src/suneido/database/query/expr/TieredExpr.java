@@ -0,0 +1,35 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.query.expr;
+
+import suneido.database.query.Header;
+import suneido.database.query.Row;
+
+/**
+ * Interprets an expression until it has been evaluated THRESHOLD times
+ * and then switches to a compiled version from {@link ExprCompiler}.
+ * This avoids the cost of generating a class for small queries.
+ * Not thread safe, but neither are queries.
+ */
+public class TieredExpr {
+	/** Number of interpreted evaluations before compiling */
+	private static final int THRESHOLD = 1000;
+	private final Expr expr;
+	private CompiledExpr compiled;
+	private int n = 0;
+
+	public TieredExpr(Expr expr) {
+		this.expr = expr;
+	}
+
+	public Object eval(Header hdr, Row row) {
+		if (compiled != null)
+			return compiled.eval(hdr, row);
+		if (++n == THRESHOLD)
+			compiled = ExprCompiler.compile(expr, hdr);
+		return expr.eval(hdr, row);
+	}
+
+}
@@ -7,6 +7,7 @@ package suneido.database.server;
 import static suneido.database.server.Dbms.isTran;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
 import suneido.SuException;
@@ -592,6 +593,62 @@ public enum Command {
 			int result = t.writeCount();
 			io.put(true).put(result);
 		}
+	},
+	/**
+	 * Get multiple records from a query ({@link DbmsQuery#get})
+	 * to reduce round trips. Used by {@link DbmsClient} to prefetch.
+	 * First skips (discards) records, this is used to resynchronize
+	 * when the client changes direction with prefetched records unused.
+	 * Then returns records until n, or the size limit is reached, or eof.
+	 * NOTE: Not in cSuneido.
+	 * <p>
+	 * '+' or '-', query int, skip int, n int, size limit int
+	 * &rarr; count int, count * (recadr int, record buffer), eof boolean
+	 */
+	GETN {
+		@Override
+		public void execute(SuChannel io) {
+			Dir dir = (io.getByte() == '-') ? Dir.PREV : Dir.NEXT;
+			DbmsQuery q = ServerData.forThread().getQuery(io.getInt());
+			int skip = io.getInt();
+			int n = io.getInt();
+			int limit = io.getInt();
+			for (int i = 0; i < skip; ++i)
+				if (q.get(dir) == null)
+					break;
+			Header hdr = q.header();
+			List<Integer> adrs = new ArrayList<>();
+			List<Record> recs = new ArrayList<>();
+			boolean eof = false;
+			for (int size = 0; recs.size() < n && size < limit; ) {
+				Row row = q.get(dir);
+				if (row == null) {
+					eof = true;
+					break;
+				}
+				Record rec = rowToRecord(row, hdr);
+				adrs.add(row.address());
+				recs.add(rec);
+				size += rec.bufSize();
+			}
+			io.put(true).put(recs.size());
+			for (int i = 0; i < recs.size(); ++i)
+				io.put(adrs.get(i)).put(recs.get(i).getBuffer());
+			io.put(eof);
+		}
+	},
+	/**
+	 * Compact the database while it is in use ({@link Dbms#compact})
+	 * NOTE: Not in cSuneido.
+	 * <p>
+	 * &rarr; number of tables int
+	 */
+	COMPACT {
+		@Override
+		public void execute(SuChannel io) {
+			int result = dbms().compact();
+			io.put(true).put(result);
+		}
 	};
 
 	//--------------------------------------------------------------------------
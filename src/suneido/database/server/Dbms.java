@@ -33,6 +33,7 @@ public abstract class Dbms {
 	public abstract List<Integer> transactions();
 	public abstract SuDate timestamp();
 	public abstract String check();
+	public abstract int compact();
 	public abstract String dump(String filename);
 	public abstract int load(String filename);
 	public abstract Object run(String s);
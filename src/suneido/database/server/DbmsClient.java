@@ -11,6 +11,7 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.List;
 
 import com.google.common.collect.ImmutableList;
@@ -221,6 +222,12 @@ public class DbmsClient extends Dbms {
 		return io.getString();
 	}
 
+	@Override
+	public int compact() {
+		send(COMPACT);
+		return io.getInt();
+	}
+
 	@Override
 	public SuObject connections() {
 		send(CONNECTIONS);
@@ -414,7 +421,7 @@ public class DbmsClient extends Dbms {
 		@Override
 		public DbmsQuery query(String s) {
 			send(QUERY, tn, s);
-			return new DbmsClientQuery(io.getInt());
+			return new DbmsClientQuery(io.getInt(), readonly);
 		}
 
 		@Override
@@ -454,13 +461,35 @@ public class DbmsClient extends Dbms {
 
 	//--------------------------------------------------------------------------
 
+	static int PREFETCH_MIN = 2;
+	static int PREFETCH_MAX = 256;
+	static int PREFETCH_BYTES = 32 * 1024;
+
+	/**
+	 * Queries in read-only transactions prefetch records with GETN.
+	 * The number of records requested starts small
+	 * and doubles (up to PREFETCH_MAX) as the query continues to be read.
+	 * Update transactions and cursors use GET one record at a time.
+	 */
 	private class DbmsClientQuery implements DbmsQuery {
 		protected final int qn;
 		private List<List<String>> keys; // cache
 		private Header header; // cache
+		private final boolean prefetch;
+		private final ArrayDeque<Row> prefetched = new ArrayDeque<>();
+		/** direction of prefetched, null if nothing outstanding */
+		private Dir prefetchDir = null;
+		/** whether the server hit eof (and so rewound) after prefetched */
+		private boolean prefetchEof = false;
+		private int prefetchN = PREFETCH_MIN;
 
 		DbmsClientQuery(int qn) {
+			this(qn, false);
+		}
+
+		DbmsClientQuery(int qn, boolean prefetch) {
 			this.qn = qn;
+			this.prefetch = prefetch;
 		}
 
 		@Override
@@ -489,13 +518,54 @@ public class DbmsClient extends Dbms {
 
 		@Override
 		public Row get(Dir dir) {
-			send(GET, (dir == Dir.NEXT ? '+' : '-'), getTran(), qn);
-			HeaderAndRow hr = rowResult(false);
-			return hr == null ? null : hr.row;
+			if (! prefetch) {
+				send(GET, (dir == Dir.NEXT ? '+' : '-'), getTran(), qn);
+				HeaderAndRow hr = rowResult(false);
+				return hr == null ? null : hr.row;
+			}
+			if (dir != prefetchDir || (prefetched.isEmpty() && ! prefetchEof))
+				getn(dir);
+			if (! prefetched.isEmpty())
+				return prefetched.remove();
+			clearPrefetch(); // eof, server has rewound
+			return null;
+		}
+
+		/**
+		 * If the direction has changed, the server is ahead of the client
+		 * by the unused prefetched records (plus one if it hit eof)
+		 * so skip that many to get back to the client's position.
+		 */
+		private void getn(Dir dir) {
+			int skip = 0;
+			if (prefetchDir != null && dir != prefetchDir) {
+				skip = prefetched.size() + (prefetchEof ? 1 : 0);
+				prefetchN = PREFETCH_MIN;
+			}
+			clearPrefetch();
+			putCmd(GETN).putByte((byte) (dir == Dir.NEXT ? '+' : '-'))
+					.put(qn).put(skip).put(prefetchN).put(PREFETCH_BYTES);
+			doRequest();
+			int n = io.getInt();
+			for (int i = 0; i < n; ++i) {
+				int recadr = io.getInt();
+				prefetched.add(new Row(Dbpkg.record(recadr, io.getOwnedBuffer())));
+			}
+			prefetchEof = io.getBool();
+			prefetchDir = dir;
+			prefetchN = Math.min(2 * prefetchN, PREFETCH_MAX);
+		}
+
+		private void clearPrefetch() {
+			prefetched.clear();
+			prefetchDir = null;
+			prefetchEof = false;
 		}
 
 		@Override
 		public void rewind() {
+			clearPrefetch();
+			prefetchN = PREFETCH_MIN;
 			send(REWIND, qn, c_or_q());
 		}
 
@@ -524,6 +594,7 @@ public class DbmsClient extends Dbms {
 
 		@Override
 		public void close() {
+			clearPrefetch();
 			send(CLOSE, qn, c_or_q());
 		}
 
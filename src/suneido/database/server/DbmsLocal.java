@@ -14,12 +14,14 @@ import com.google.common.base.CharMatcher;
 import suneido.*;
 import suneido.compiler.Compiler;
 import suneido.database.immudb.Database;
+import suneido.database.immudb.Dbpkg;
 import suneido.database.immudb.Record;
 import suneido.database.immudb.RecordBuilder;
 import suneido.database.immudb.Table;
 import suneido.database.immudb.Transaction;
 import suneido.database.query.CompileQuery;
 import suneido.database.query.Query.Dir;
+import suneido.database.query.QueryCache;
 import suneido.database.query.Request;
 import suneido.runtime.Pack;
 import suneido.runtime.builtin.ServerEval;
@@ -96,6 +98,12 @@ public class DbmsLocal extends Dbms {
 		return db.check();
 	}
 
+	/** Online compaction, replaces this DbmsLocal via {@link Suneido#setDb} */
+	@Override
+	public int compact() {
+		return Dbpkg.compactOnline(db, Suneido::setDb);
+	}
+
 	@Override
 	public int finalSize() {
 		return db.finalSize();
@@ -182,6 +190,15 @@ public class DbmsLocal extends Dbms {
 		info.put("timeoutMin", Suneido.cmdlineoptions.timeoutMin);
 		info.put("maxUpdateTranSec", Suneido.cmdlineoptions.max_update_tran_sec);
 		info.put("maxWritesPerTran", Suneido.cmdlineoptions.max_writes_per_tran);
+		info.put("groupCommit", Suneido.cmdlineoptions.group_commit);
+		if (Suneido.server != null) {
+			info.put("requestThreads", Suneido.server.requestThreads());
+			info.put("activeRequests", Suneido.server.activeRequests());
+			info.put("queuedRequests", Suneido.server.queuedRequests());
+			info.put("maxQueuedRequests", Suneido.server.maxQueuedRequests());
+		}
+		info.put("queryCacheHits", QueryCache.hits());
+		info.put("queryCacheMisses", QueryCache.misses());
 		info.put("currentSize", size());
 		return info;
 	}
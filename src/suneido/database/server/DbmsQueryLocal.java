@@ -6,72 +6,85 @@ package suneido.database.server;
 
 import java.util.List;
 
+import suneido.SuException;
 import suneido.database.immudb.Record;
 import suneido.database.query.Header;
 import suneido.database.query.Query;
 import suneido.database.query.Query.Dir;
+import suneido.database.query.QueryCache;
 import suneido.database.query.Row;
 
 public class DbmsQueryLocal implements DbmsQuery {
-	private final Query q;
+	/** null after close, since the query may be reused, see {@link QueryCache} */
+	private Query q;
 
 	public DbmsQueryLocal(Query q) {
 		this.q = q;
 	}
 
+	private Query q() {
+		if (q == null)
+			throw new SuException("can't use closed query");
+		return q;
+	}
+
 	@Override
 	public Row get(Dir dir) {
-		return q.get(dir);
+		return q().get(dir);
 	}
 
 	@Override
 	public Header header() {
-		return q.header();
+		return q().header();
 	}
 
 	@Override
 	public List<List<String>> keys() {
-		return q.keys();
+		return q().keys();
 	}
 
 	@Override
 	public List<String> ordering() {
-		return q.ordering();
+		return q().ordering();
 	}
 
 	@Override
 	public void output(Record rec) {
-		q.output(rec);
+		q().output(rec);
 	}
 
 	@Override
 	public void rewind() {
-		q.rewind();
+		q().rewind();
 	}
 
 	@Override
 	public void setTransaction(DbmsTran tran) {
-		q.setTransaction(tran == null ? null : ((DbmsTranLocal) tran).t);
+		q().setTransaction(tran == null ? null : ((DbmsTranLocal) tran).t);
 	}
 
 	@Override
 	public boolean updateable() {
-		return q.updateable();
+		return q().updateable();
 	}
 
 	@Override
 	public String strategy() {
-		return q.strategy();
+		return q().strategy();
 	}
 
 	@Override
 	public String toString() {
-		return q.strategy();
+		return q == null ? "closed query" : q.strategy();
 	}
 
 	@Override
 	public void close() {
+		if (q == null)
+			return;
 		q.close();
+		QueryCache.release(q);
+		q = null;
 	}
 
 }
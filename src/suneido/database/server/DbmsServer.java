@@ -14,12 +14,9 @@ import java.nio.channels.SocketChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.*;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 import java.util.function.BiConsumer;
 
 import com.google.common.base.Strings;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import suneido.SuException;
 import suneido.Suneido;
@@ -37,12 +34,22 @@ import suneido.util.ThreadSafe;
  */
 public class DbmsServer {
 	public final ServerDataSet serverDataSet = new ServerDataSet();
+	private final RequestScheduler scheduler;
 	private final ServerBySelect server;
 	public static final int helloSize = 50; // must match cSuneido
 
 	public DbmsServer(int idleTimeoutMin) {
+		this(idleTimeoutMin, 0);
+	}
+
+	/** @param nthreads The number of request threads, 0 for the default */
+	public DbmsServer(int idleTimeoutMin, int nthreads) {
+		scheduler = new RequestScheduler(nthreads > 0 ? nthreads
+				: RequestScheduler.defaultThreads());
 		server = new ServerBySelect(
-				(SocketChannel c) -> { return new DbmsServerHandler(c, serverDataSet); },
+				(SocketChannel c) -> {
+					return new DbmsServerHandler(c, serverDataSet, scheduler);
+				},
 				idleTimeoutMin);
 	}
 
@@ -60,14 +67,13 @@ public class DbmsServer {
 	 * Each handler has ServerData which tracks open transactions, queries, etc.
 	 * A handler is constructed when a new connection is accepted.
 	 * The request method is called each time the channel becomes readable.
-	 * The request method reads the request, executes it, writes the response
+	 * It passes the request to the shared {@link RequestScheduler}
+	 * which reads the request, executes it, writes the response
 	 * and then reregisters the channel with the selector.
 	 */
 	@NotThreadSafe
 	static class DbmsServerHandler implements Handler {
-		private final ThreadFactory threadFactory =
-				new ThreadFactoryBuilder().setNameFormat("DbmsServer-thread-%d").build();
-		private final Executor executor = Executors.newCachedThreadPool(threadFactory);
+		private final Executor executor;
 		private static final ThreadLocal<ByteBuffer> tlbuf =
 				ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(SuChannel.BUFSIZE));
 		// avoid calling values every time since it clones
@@ -78,9 +84,11 @@ public class DbmsServer {
 			static final ByteBuffer hello = hello();
 		}
 
-		DbmsServerHandler(Channel channel, ServerDataSet serverDataSet) {
+		DbmsServerHandler(Channel channel, ServerDataSet serverDataSet,
+				Executor executor) {
 			sendHello(channel);
 			this.serverDataSet = serverDataSet;
+			this.executor = executor;
 			serverData = new ServerData(channel);
 			if (channel instanceof SocketChannel) {
 				InetAddress adr = ((SocketChannel) channel).socket().getInetAddress();
@@ -200,4 +208,20 @@ public class DbmsServer {
 		return serverDataSet.killConnections(sessionId);
 	}
 
+	public int requestThreads() {
+		return scheduler.threads();
+	}
+
+	public int activeRequests() {
+		return scheduler.active();
+	}
+
+	public int queuedRequests() {
+		return scheduler.queued();
+	}
+
+	public int maxQueuedRequests() {
+		return scheduler.maxQueued();
+	}
+
 }
@@ -11,6 +11,7 @@ import suneido.database.query.CompileQuery;
 import suneido.database.query.Query;
 import suneido.database.query.Query.Dir;
 import suneido.database.query.QueryAction;
+import suneido.database.query.QueryCache;
 import suneido.database.query.Row;
 import suneido.database.server.Dbms.HeaderAndRow;
 
@@ -39,12 +40,13 @@ public class DbmsTranLocal implements DbmsTran {
 
 	@Override
 	public DbmsQuery query(String s) {
-		return new DbmsQueryLocal(CompileQuery.query(t, ServerData.forThread(), s));
+		return new DbmsQueryLocal(
+				QueryCache.query(t, ServerData.forThread(), s));
 	}
 
 	@Override
 	public HeaderAndRow get(Dir dir, String query, boolean one) {
-		Query q = CompileQuery.query(t, ServerData.forThread(), query);
+		Query q = QueryCache.query(t, ServerData.forThread(), query);
 		try {
 			Row row = q.get(dir);
 			if (row == null)
@@ -54,6 +56,7 @@ public class DbmsTranLocal implements DbmsTran {
 			return new HeaderAndRow(q.header(), row);
 		} finally {
 			q.close();
+			QueryCache.release(q);
 		}
 	}
 
@@ -39,6 +39,11 @@ public class DbmsUnauth extends Dbms {
 		throw notauth;
 	}
 
+	@Override
+	public int compact() {
+		throw notauth;
+	}
+
 	@Override
 	public SuObject connections() {
 		throw notauth;
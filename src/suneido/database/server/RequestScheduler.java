@@ -0,0 +1,95 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.server;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import suneido.util.ThreadSafe;
+
+/**
+ * Server wide executor for {@link DbmsServer} requests.
+ * A bounded number of worker threads is shared by all the connections.
+ * <p>
+ * A connection is not reregistered with the selector
+ * until its response has been written,
+ * so each connection has at most one request queued or running.
+ * This means the FIFO queue is fair between sessions
+ * and can not grow larger than the number of connections.
+ * When all the threads are busy, requests are delayed in the queue
+ * rather than creating more threads.
+ */
+@ThreadSafe
+class RequestScheduler implements Executor {
+	private final ThreadPoolExecutor executor;
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger maxQueued = new AtomicInteger();
+	private final AtomicLong nrequests = new AtomicLong();
+	private final AtomicLong waitNanos = new AtomicLong();
+
+	RequestScheduler(int nthreads) {
+		executor = new ThreadPoolExecutor(nthreads, nthreads,
+				60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+				new ThreadFactoryBuilder()
+						.setNameFormat("DbmsServer-thread-%d").build());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	static int defaultThreads() {
+		return Math.max(32, 8 * Runtime.getRuntime().availableProcessors());
+	}
+
+	@Override
+	public void execute(Runnable request) {
+		long t = System.nanoTime();
+		maxQueued.accumulateAndGet(queued.incrementAndGet(), Math::max);
+		executor.execute(() -> {
+			queued.decrementAndGet();
+			waitNanos.addAndGet(System.nanoTime() - t);
+			nrequests.incrementAndGet();
+			request.run();
+		});
+	}
+
+	int threads() {
+		return executor.getMaximumPoolSize();
+	}
+
+	/** @return The number of requests currently being executed */
+	int active() {
+		return executor.getActiveCount();
+	}
+
+	/** @return The number of requests waiting for a thread */
+	int queued() {
+		return queued.get();
+	}
+
+	/** @return The largest number of requests that have waited at once */
+	int maxQueued() {
+		return maxQueued.get();
+	}
+
+	/** @return The average time requests waited for a thread */
+	long averageWaitMicros() {
+		long n = nrequests.get();
+		return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.get() / n);
+	}
+
+	@Override
+	public String toString() {
+		return "RequestScheduler threads " + threads() +
+				" active " + active() + " queued " + queued() +
+				" max queued " + maxQueued() +
+				" average wait " + averageWaitMicros() + "us";
+	}
+
+}
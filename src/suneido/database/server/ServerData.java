@@ -122,6 +122,9 @@ public class ServerData {
 	public void dropSview(String name) {
 		sviews.remove(name);
 	}
+	public boolean hasSviews() {
+		return ! sviews.isEmpty();
+	}
 
 	public void enterView(String name) {
 		viewnest.push(name);
@@ -8,6 +8,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import suneido.util.ThreadSafe;
 
@@ -28,9 +33,19 @@ public abstract class Context {
 	private final Contexts contexts;
 	private final Map<String, Integer> nameToSlot = new HashMap<>();
 	private final List<String> names = new ArrayList<>(1000);
-	private final List<Object> values = new ArrayList<>(1000);
+	/**
+	 * Read without locking, written while synchronized.
+	 * Replaced by a larger copy (while synchronized) when full.
+	 * A slot contains null (not loaded), a value, nonExistent,
+	 * or a Loading while it is being fetched.
+	 */
+	private volatile AtomicReferenceArray<Object> values =
+			new AtomicReferenceArray<>(1000);
 	private final Map<String, String> override = new HashMap<>();
 	private static final Object nonExistent = new Object();
+	/** the Loading each thread is waiting for, used to detect deadlock */
+	private static final ConcurrentHashMap<Thread, Loading> waiting =
+			new ConcurrentHashMap<>();
 
 	// protected so we can derive a trivial context for testing purposes
 	protected Context(Contexts contexts) {
@@ -38,7 +53,6 @@ public abstract class Context {
 		contexts.addContext(this);
 		// don't use slot 0
 		names.add(null);
-		values.add(null);
 	}
 
 	/**
@@ -47,20 +61,29 @@ public abstract class Context {
 	 */
 	public final synchronized int slotForName(String name) {
 		return nameToSlot.computeIfAbsent(name, (key) -> {
-			assert names.size() == values.size();
 			int slot = names.size();
 			names.add(name);
-			values.add(null);
+			if (slot >= values.length())
+				grow();
 			return slot;
 			});
 	}
 
-	public final synchronized Object get(String name) {
+	private void grow() {
+		AtomicReferenceArray<Object> vals = values;
+		int n = vals.length();
+		AtomicReferenceArray<Object> newvals = new AtomicReferenceArray<>(2 * n);
+		for (int i = 0; i < n; ++i)
+			newvals.set(i, vals.get(i));
+		values = newvals;
+	}
+
+	public final Object get(String name) {
 		return get(slotForName(name));
 	}
 
 	/** Called by compiled code to get the value of a global */
-	public final synchronized Object get(int slot) {
+	public final Object get(int slot) {
 		Object value = tryget(slot);
 		if (value == null)
 			throw new SuException("can't find " + nameForSlot(slot));
@@ -68,20 +91,82 @@ public abstract class Context {
 	}
 
 	/** Called for rules and triggers and UserDefined */
-	public synchronized final Object tryget(String name) {
+	public final Object tryget(String name) {
 		return tryget(slotForName(name));
 	}
 
-	private synchronized final Object tryget(int slot) {
-		Object value = values.get(slot);
-		if (value == null) {
-			values.set(slot, nonExistent); // in case fetch fails
+	/**
+	 * Lock free if the value has already been fetched.
+	 * Otherwise one thread fetches it,
+	 * other threads wanting the same name wait for it.
+	 */
+	private Object tryget(int slot) {
+		AtomicReferenceArray<Object> vals = values;
+		Object value = (slot < vals.length()) ? vals.get(slot) : null;
+		if (value == null || value instanceof Loading)
+			value = load(slot);
+		return value == nonExistent ? null : value;
+	}
+
+	private Object load(int slot) {
+		Loading loading;
+		boolean mine = false;
+		synchronized (this) {
+			Object value = values.get(slot);
+			if (value != null && ! (value instanceof Loading))
+				return value;
+			if (value == null) {
+				loading = new Loading();
+				values.set(slot, loading);
+				mine = true;
+			} else
+				loading = (Loading) value;
+		}
+		if (mine)
+			return fetch(slot, loading); // NOT while synchronized
+		if (loading.owner == Thread.currentThread())
+			return loading.partial; // recursive reference while fetching
+		return waitFor(loading);
+	}
+
+	private Object fetch(int slot, Loading loading) {
+		Object value = nonExistent; // in case fetch fails
+		try {
 			String name = nameForSlot(slot);
 			value = name.contains("@") ? contexts.fetchExplicit(name) : fetch(name);
-			values.set(slot, value == null ? nonExistent : value);
+			if (value == null)
+				value = nonExistent;
 			// nonExistent is used to avoid repeating failing fetches
+		} finally {
+			synchronized (this) {
+				// if it was cleared while fetching, leave it cleared
+				if (values.get(slot) == loading)
+					values.set(slot, value);
+			}
+			if (loading.partial != nonExistent)
+				InlineCache.invalidate(); // lookups may have used partial
+			loading.done(value);
+		}
+		return value;
+	}
+
+	private static Object waitFor(Loading loading) {
+		Thread self = Thread.currentThread();
+		waiting.put(self, loading);
+		try {
+			// waiting for a thread that is (indirectly) waiting for us
+			// would deadlock, treat it as a recursive reference
+			Thread t = loading.owner;
+			for (int i = 0; t != null && i < 100; ++i) {
+				if (t == self)
+					return loading.partial;
+				Loading w = waiting.get(t);
+				t = (w == null) ? null : w.owner;
+			}
+			return loading.get();
+		} finally {
+			waiting.remove(self);
 		}
-		return value == nonExistent ? null : value;
 	}
 
 	public synchronized final String nameForSlot(int slot) {
@@ -94,12 +179,14 @@ public abstract class Context {
 	/** Remove the cached value for a slot. Called by Unload */
 	public synchronized final void clear(String name) {
 		values.set(slotForName(name), null);
+		InlineCache.invalidate();
 	}
 
 	/** Remove the cached values for all slots. Called by Use & Unuse */
 	public synchronized final void clearAll() {
-		for (int i = 0; i < values.size(); ++i)
+		for (int i = 0; i < values.length(); ++i)
 			values.set(i, null);
+		InlineCache.invalidate();
 	}
 
 	/** Add or remove an override of specific record. Called by LibraryOverride */
@@ -122,7 +209,7 @@ public abstract class Context {
 		override.clear();
 	}
 
-	protected String getOverride(String lib, String name) {
+	protected synchronized String getOverride(String lib, String name) {
 		return override.get(lib + ':' + name);
 	}
 
@@ -131,7 +218,33 @@ public abstract class Context {
 	 * Also used by tests which is why it is public.
 	 */
 	public synchronized final void set(String name, Object value) {
-		values.set(slotForName(name), value);
+		int slot = slotForName(name);
+		Object x = values.get(slot);
+		if (x instanceof Loading &&
+				((Loading) x).owner == Thread.currentThread())
+			((Loading) x).partial = value; // overloading while fetching
+		else
+			values.set(slot, value);
+		InlineCache.invalidate();
+	}
+
+	/** A value that is being fetched */
+	private static class Loading {
+		final Thread owner = Thread.currentThread();
+		private final CountDownLatch latch = new CountDownLatch(1);
+		/** set (by the owner) while fetching */
+		volatile Object partial = nonExistent;
+		private volatile Object value;
+
+		void done(Object value) {
+			this.value = value;
+			latch.countDown();
+		}
+
+		Object get() {
+			Uninterruptibles.awaitUninterruptibly(latch);
+			return value;
+		}
 	}
 
 }
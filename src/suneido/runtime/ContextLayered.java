@@ -4,6 +4,13 @@
 
 package suneido.runtime;
 
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import suneido.SuException;
 import suneido.TheDbms;
 import suneido.compiler.Compiler;
@@ -18,13 +25,20 @@ import suneido.util.ByteBuffers;
  * - reference in code - "previous" value becomes constant
  */
 public class ContextLayered extends Context {
-	private static int overload = 0;
+	private static final AtomicInteger overload = new AtomicInteger();
+	/** conservative check for _Name references, see AstCompile.isOverload */
+	private static final Pattern OVERLOAD = Pattern.compile("(?<![\\w.])_[A-Z]");
+	private final Cache<Key, Object> compiled =
+			CacheBuilder.newBuilder().maximumSize(10_000).build();
 
 	public ContextLayered(Contexts contexts) {
 		super(contexts);
 	}
 
-	/** caller (i.e. Context) must synchronize */
+	/**
+	 * Called by Context without synchronization.
+	 * Context ensures only one thread fetches a given name at a time.
+	 */
 	@Override
 	protected Object fetch(String name) {
 		Object x = Builtins.get(name);
@@ -45,7 +59,7 @@ public class ContextLayered extends Context {
 				src = ByteBuffers.bufferToString(libget.text);
 			try {
 				try {
-					result = Compiler.compile(libget.library, name, src, this);
+					result = compile(libget.library, name, src);
 				} catch (SuException e) {
 					if (e.toString().contains("jSuneido does not implement dll"))
 						error = e;
@@ -64,11 +78,58 @@ public class ContextLayered extends Context {
 		return result;
 	}
 
+	/**
+	 * Reuse the compiled value if the source is unchanged,
+	 * e.g. after Unload or Use/Unuse clear the context.
+	 * Not for overloading (_Name) since that depends on the other libraries.
+	 */
+	private Object compile(String library, String name, String src) {
+		if (OVERLOAD.matcher(src).find())
+			return Compiler.compile(library, name, src, this);
+		Key key = new Key(library, name, src);
+		Object x = compiled.getIfPresent(key);
+		if (x == null) {
+			x = Compiler.compile(library, name, src, this);
+			if (x != null)
+				compiled.put(key, x);
+		} else if (x instanceof SuClass)
+			((SuClass) x).resetCaches();
+		return x;
+	}
+
+	private static class Key {
+		final String library;
+		final String name;
+		final String src;
+
+		Key(String library, String name, String src) {
+			this.library = library;
+			this.name = name;
+			this.src = src;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other)
+				return true;
+			if (! (other instanceof Key))
+				return false;
+			Key that = (Key) other;
+			return library.equals(that.library) && name.equals(that.name) &&
+					src.equals(that.src);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(library, name, src);
+		}
+	}
+
 	/** Called by AstCompile for classes that inherit from _Name */
-	public synchronized String overload(String base) {
+	public String overload(String base) {
 		assert base.startsWith("_");
 		String name = base.substring(1); // remove leading underscore
-		String nameForPreviousValue = overload++ + base;
+		String nameForPreviousValue = overload.getAndIncrement() + base;
 		set(nameForPreviousValue, get(name));
 		return nameForPreviousValue;
 	}
@@ -0,0 +1,204 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.runtime;
+
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.invoke.SwitchPoint;
+import java.util.Collections;
+
+import com.google.common.collect.ImmutableSet;
+
+import suneido.SuDate;
+import suneido.SuInternalError;
+import suneido.SuObject;
+import suneido.SuRecord;
+import suneido.SuValue;
+import suneido.util.Dnum;
+import suneido.util.ThreadSafe;
+
+/**
+ * invokedynamic call sites for method calls with a constant name
+ * and direct arguments, generated by {@link suneido.compiler.ClassGen}.
+ * <p>
+ * Each call site caches the results of lookup
+ * for up to MAX_DEPTH receiver types (a polymorphic inline cache).
+ * Builtin types are identified by their Java class,
+ * instances by their SuClass, and classes by themselves.
+ * Other receivers, or more than MAX_DEPTH types,
+ * use Ops.invoke the same as before.
+ * <p>
+ * Lookup can depend on globals (e.g. base classes or Strings)
+ * so all the caches are invalidated (with a SwitchPoint)
+ * when a Context changes e.g. Unload or Use.
+ */
+@ThreadSafe
+public final class InlineCache extends MutableCallSite {
+	static final int MAX_DEPTH = 4;
+	private static final ImmutableSet<Class<?>> byClass = ImmutableSet.of(
+			String.class, Concats.class, Integer.class, Long.class, Dnum.class,
+			SuObject.class, SuRecord.class, SuDate.class);
+	private static SwitchPoint switchPoint = new SwitchPoint();
+	/** whether switchPoint has been used by any call site */
+	private static boolean used = false;
+	private final String method;
+	private final int nargs;
+	private final MethodHandle fallback;
+	/** the guards added so far, ending with fallback */
+	private MethodHandle chain;
+	/** the SwitchPoint the chain was built with */
+	private SwitchPoint linked;
+	private int depth = 0;
+
+	private InlineCache(MethodType type, String method) {
+		super(type);
+		this.method = method;
+		this.nargs = type.parameterCount() - 1;
+		fallback = FALLBACK.bindTo(this)
+				.asCollector(Object[].class, type.parameterCount())
+				.asType(type);
+		chain = fallback;
+		setTarget(fallback);
+	}
+
+	public static CallSite bootstrap(MethodHandles.Lookup lookup, String name,
+			MethodType type, String method) {
+		return new InlineCache(type, method);
+	}
+
+	/** Discard all the cached lookups. Called by Context when it changes */
+	static void invalidate() {
+		SwitchPoint sp;
+		synchronized (InlineCache.class) {
+			if (! used)
+				return;
+			sp = switchPoint;
+			switchPoint = new SwitchPoint();
+			used = false;
+		}
+		SwitchPoint.invalidateAll(new SwitchPoint[] { sp });
+	}
+
+	private static synchronized SwitchPoint switchPoint() {
+		used = true;
+		return switchPoint;
+	}
+
+	/** Called on a cache miss, does the lookup and adds it to the cache */
+	@SuppressWarnings("unused")
+	private Object fallback(Object[] args) {
+		Object self = args[0];
+		// get the SwitchPoint before lookup in case of concurrent changes
+		SwitchPoint sp = switchPoint();
+		SuValue f = Ops.target(self).lookup(method);
+		link(sp, self, f);
+		switch (nargs) {
+		case 0:
+			return f.eval0(self);
+		case 1:
+			return f.eval1(self, args[1]);
+		case 2:
+			return f.eval2(self, args[1], args[2]);
+		case 3:
+			return f.eval3(self, args[1], args[2], args[3]);
+		case 4:
+			return f.eval4(self, args[1], args[2], args[3], args[4]);
+		default:
+			throw SuInternalError.unreachable();
+		}
+	}
+
+	private synchronized void link(SwitchPoint sp, Object self, SuValue f) {
+		MethodHandle test = test(self);
+		if (test == null || f instanceof SuValue.NotFound ||
+				sp.hasBeenInvalidated())
+			return;
+		if (sp != linked) {
+			linked = sp;
+			chain = fallback;
+			depth = 0;
+		}
+		if (depth >= MAX_DEPTH) {
+			setTarget(MethodHandles.insertArguments(INVOKE[nargs], 1, method)
+					.asType(type()));
+			return;
+		}
+		MethodHandle eval = EVAL[nargs].bindTo(f).asType(type());
+		chain = MethodHandles.guardWithTest(test, eval, chain);
+		++depth;
+		setTarget(sp.guardWithTest(chain, fallback));
+	}
+
+	/** @return A guard for the receiver's type, or null if not cacheable */
+	private static MethodHandle test(Object x) {
+		if (x == null)
+			return null;
+		Class<?> c = x.getClass();
+		if (c == SuInstance.class)
+			return INSTANCE_TEST.bindTo(((SuInstance) x).myclass);
+		if (c == SuClass.class)
+			return SAME_TEST.bindTo(x);
+		if (byClass.contains(c))
+			return CLASS_TEST.bindTo(c);
+		return null;
+	}
+
+	@SuppressWarnings("unused")
+	private static boolean isInstanceOf(SuClass c, Object x) {
+		return x != null && x.getClass() == SuInstance.class &&
+				((SuInstance) x).myclass == c;
+	}
+
+	@SuppressWarnings("unused")
+	private static boolean isSame(Object y, Object x) {
+		return x == y;
+	}
+
+	@SuppressWarnings("unused")
+	private static boolean isClass(Class<?> c, Object x) {
+		return x != null && x.getClass() == c;
+	}
+
+	private static final MethodHandle FALLBACK;
+	private static final MethodHandle INSTANCE_TEST;
+	private static final MethodHandle SAME_TEST;
+	private static final MethodHandle CLASS_TEST;
+	/** SuValue.eval0 to eval4 */
+	private static final MethodHandle[] EVAL = new MethodHandle[5];
+	/** Ops.invoke0 to invoke4 */
+	private static final MethodHandle[] INVOKE = new MethodHandle[5];
+	static {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		try {
+			FALLBACK = lookup.findVirtual(InlineCache.class, "fallback",
+					methodType(Object.class, Object[].class));
+			INSTANCE_TEST = lookup.findStatic(InlineCache.class, "isInstanceOf",
+					methodType(boolean.class, SuClass.class, Object.class));
+			SAME_TEST = lookup.findStatic(InlineCache.class, "isSame",
+					methodType(boolean.class, Object.class, Object.class));
+			CLASS_TEST = lookup.findStatic(InlineCache.class, "isClass",
+					methodType(boolean.class, Class.class, Object.class));
+			for (int n = 0; n < EVAL.length; ++n) {
+				EVAL[n] = lookup.findVirtual(SuValue.class, "eval" + n,
+						methodType(Object.class, Object.class, objects(n)));
+				INVOKE[n] = lookup.findStatic(Ops.class, "invoke" + n,
+						methodType(Object.class, Object.class, objects(n))
+							.insertParameterTypes(1, String.class));
+			}
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new SuInternalError("InlineCache initialization failed", e);
+		}
+	}
+
+	private static Class<?>[] objects(int n) {
+		return Collections.nCopies(n, Object.class).toArray(new Class<?>[n]);
+	}
+
+}
@@ -0,0 +1,99 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.runtime;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import suneido.util.ThreadSafe;
+
+/**
+ * The layout of the members of an {@link SuInstance},
+ * i.e. which slot holds each member ("hidden classes").
+ * <p>
+ * Immutable and shared by the instances of a class
+ * that add the same members in the same order.
+ * Each class has its own root (empty) shape.
+ * Adding a member transitions to another shape,
+ * the transitions are cached so instances end up sharing shapes.
+ * <p>
+ * Instances with too many members, or classes with too many different
+ * orders of adding them, use a map instead, see {@link #with}
+ */
+@ThreadSafe
+final class Shape {
+	static final int MAX_SLOTS = 32;
+	static final int MAX_TRANSITIONS = 8;
+	/** above this size, slot uses a map instead of a linear search */
+	private static final int LINEAR = 8;
+	/** the member names in slot order */
+	private final String[] names;
+	private final Map<String, Integer> slots;
+	private final Map<String, Shape> transitions = new ConcurrentHashMap<>();
+
+	/** @return A new empty shape, used by SuClass for its instances */
+	static Shape root() {
+		return new Shape(new String[0]);
+	}
+
+	private Shape(String[] names) {
+		this.names = names;
+		if (names.length <= LINEAR)
+			slots = null;
+		else {
+			slots = new HashMap<>();
+			for (int i = 0; i < names.length; ++i)
+				slots.put(names[i], i);
+		}
+	}
+
+	int size() {
+		return names.length;
+	}
+
+	String name(int slot) {
+		return names[slot];
+	}
+
+	/** @return The slot for the member, or -1 if it's not in this shape */
+	int slot(Object name) {
+		if (slots != null) {
+			Integer i = slots.get(name);
+			return i == null ? -1 : i;
+		}
+		for (int i = 0; i < names.length; ++i)
+			if (names[i] == name) // names are usually interned constants
+				return i;
+		for (int i = 0; i < names.length; ++i)
+			if (names[i].equals(name))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * @return The shape with the member added (in the next slot),
+	 * or null if the instance should switch to a map
+	 */
+	Shape with(String name) {
+		Shape next = transitions.get(name);
+		if (next != null)
+			return next;
+		if (names.length >= MAX_SLOTS || transitions.size() >= MAX_TRANSITIONS)
+			return null;
+		String[] a = Arrays.copyOf(names, names.length + 1);
+		a[names.length] = name;
+		Shape shape = new Shape(a);
+		next = transitions.putIfAbsent(name, shape);
+		return next != null ? next : shape;
+	}
+
+	@Override
+	public String toString() {
+		return "Shape" + Arrays.toString(names);
+	}
+
+}
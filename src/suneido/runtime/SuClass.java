@@ -29,6 +29,8 @@ public class SuClass extends SuValue implements Showable {
 	private final String baseGlobal; // TODO could be int slot
 	private final Map<String, Object> members; // must be synchronized
 	private boolean hasGet_ = true; // till we know different
+	/** the initial member layout of instances */
+	final Shape shape = Shape.root();
 	private static final Map<String, SuCallable> basicMethods =
 			BuiltinMethods.methods("class", SuClass.class);
 	private static final BuiltinMethods userGeneralMethods = new BuiltinMethods(
@@ -43,6 +45,11 @@ public class SuClass extends SuValue implements Showable {
 		this.members = (Map<String, Object>) (members == null ? Collections.emptyMap() : members);
 	}
 
+	/** Called when a cached class is reused, since base classes may have changed */
+	void resetCaches() {
+		hasGet_ = true;
+	}
+
 	@Override
 	public Object get(Object member) {
 		return get(this, member);
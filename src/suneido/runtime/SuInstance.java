@@ -7,6 +7,7 @@ package suneido.runtime;
 import static suneido.runtime.FunctionSpec.NA;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -19,22 +20,81 @@ import suneido.util.PairStack;
 /**
  * An instance of a Suneido class. The class itself is represented by an
  * instance of {@link SuClass}.
+ * <p>
+ * Member values are stored in slots according to a {@link Shape}
+ * shared with other instances of the class.
+ * Instances switch to a map if the shape can't handle them,
+ * e.g. too many members or deleting members.
  */
 public class SuInstance extends SuValue {
 	final SuClass myclass;
-	private final Map<String, Object> ivars;
+	/** null if using ivars */
+	private Shape shape;
+	private Object[] slots;
+	/** only used if the members don't fit a shape */
+	private Map<String, Object> ivars;
+	private static final Object[] NO_SLOTS = new Object[0];
 	private static final Map<String, SuCallable> methods =
 			BuiltinMethods.methods("object", SuInstance.class);
 
 	public SuInstance(SuClass myclass) {
 		this.myclass = myclass;
-		this.ivars = new HashMap<>();
+		shape = myclass.shape;
+		slots = NO_SLOTS;
 	}
 
 	/** copy constructor */
 	public SuInstance(SuInstance other) {
 		myclass = other.myclass;
-		ivars = new HashMap<>(other.ivars);
+		shape = other.shape;
+		slots = other.slots.clone();
+		if (other.ivars != null)
+			ivars = new HashMap<>(other.ivars);
+	}
+
+	/** @return The value of the member in this instance, or null */
+	private Object ivar(Object key) {
+		if (shape == null)
+			return ivars.get(key);
+		int i = shape.slot(key);
+		return i == -1 ? null : slots[i];
+	}
+
+	private boolean hasIvar(Object key) {
+		return shape == null ? ivars.containsKey(key) : shape.slot(key) != -1;
+	}
+
+	private void putIvar(String key, Object value) {
+		if (shape != null) {
+			int i = shape.slot(key);
+			if (i == -1) {
+				Shape next = shape.with(key);
+				if (next != null) {
+					i = shape.size();
+					if (i >= slots.length)
+						slots = Arrays.copyOf(slots, Math.max(4, 2 * slots.length));
+					shape = next;
+				}
+			}
+			if (i != -1) {
+				slots[i] = value;
+				return;
+			}
+			toMap();
+		}
+		ivars.put(key, value);
+	}
+
+	private void toMap() {
+		ivars = new HashMap<>();
+		for (int i = 0; i < shape.size(); ++i)
+			ivars.put(shape.name(i), slots[i]);
+		shape = null;
+		slots = NO_SLOTS;
+	}
+
+	private int ivarsSize() {
+		return shape == null ? ivars.size() : shape.size();
 	}
 
 	@Override
@@ -97,10 +157,18 @@ public class SuInstance extends SuValue {
 	public static Object Delete(Object self, Object key, Object all) {
 		if ((key == NA) == (all == NA))
 			throw new SuException("usage: object.Delete(field) or object.Delete(all:)");
-		if (key != NA)
-			((SuInstance) self).ivars.remove(key);
-		else // all:
-			((SuInstance) self).ivars.clear();
+		SuInstance x = (SuInstance) self;
+		if (key != NA) {
+			if (x.hasIvar(key)) {
+				if (x.shape != null)
+					x.toMap();
+				x.ivars.remove(key);
+			}
+		} else { // all:
+			x.shape = x.myclass.shape;
+			x.slots = NO_SLOTS;
+			x.ivars = null;
+		}
 		return self;
 	}
 
@@ -118,7 +186,7 @@ public class SuInstance extends SuValue {
 	}
 
 	private Object getDefault(Object k, Object b) {
-		Object x = ivars.get(k);
+		Object x = ivar(k);
 		if (x != null)
 			return x;
 		return myclass.getDefault(this, k, b);
@@ -130,14 +198,22 @@ public class SuInstance extends SuValue {
 	}
 
 	private boolean hasMember(Object key) {
-		if (ivars.containsKey(key))
+		if (hasIvar(key))
 			return true;
 		return myclass.hasMember(key);
 	}
 
 	@Params("all=false")
 	public static SuObject Members(Object self, Object all) {
-		SuObject c = new SuObject(((SuInstance) self).ivars.keySet());
+		SuInstance x = (SuInstance) self;
+		SuObject c;
+		if (x.shape == null)
+			c = new SuObject(x.ivars.keySet());
+		else {
+			c = new SuObject(x.shape.size());
+			for (int i = 0; i < x.shape.size(); ++i)
+				c.add(x.shape.name(i));
+		}
 		if (all == Boolean.TRUE) {
 			((SuInstance) self).myclass.members2(c, true);
 			c.sort(false);
@@ -151,7 +227,7 @@ public class SuInstance extends SuValue {
 	}
 
 	public static Object Size(Object self) {
-		return ((SuInstance) self).ivars.size();
+		return ((SuInstance) self).ivarsSize();
 	}
 
 	@Override
@@ -178,7 +254,7 @@ public class SuInstance extends SuValue {
 
 	@Override
 	public Object get(Object member) {
-		Object value = ivars.get(member);
+		Object value = ivar(member);
 		if (value != null)
 			return value;
 		return myclass.get(this, member);
@@ -189,7 +265,7 @@ public class SuInstance extends SuValue {
 		if (! Ops.isString(member))
 			throw new SuException("non-string member name: "
 					+ Ops.typeName(member));
-		ivars.put(member.toString(), value);
+		putIvar(member.toString(), value);
 	}
 
 	public Object classGet(Object member) {
@@ -207,7 +283,7 @@ public class SuInstance extends SuValue {
 
 	// avoid infinite recursion from self-reference
 	public static boolean equals2(SuInstance x, SuInstance y, PairStack stack) {
-		if (x.myclass != y.myclass || x.ivars.size() != y.ivars.size())
+		if (x.myclass != y.myclass || x.ivarsSize() != y.ivarsSize())
 			return false;
 		if (stack == null)
 			stack = new PairStack();
@@ -215,9 +291,15 @@ public class SuInstance extends SuValue {
 			return true; // comparison is already in progress
 		stack.push(x, y);
 		try {
-			for (Map.Entry<String, Object> e : x.ivars.entrySet())
-				if (! SuObject.equals3(e.getValue(), y.ivars.get(e.getKey()), stack))
-					return false;
+			if (x.shape == null) {
+				for (Map.Entry<String, Object> e : x.ivars.entrySet())
+					if (! SuObject.equals3(e.getValue(), y.ivar(e.getKey()), stack))
+						return false;
+			} else {
+				for (int i = 0; i < x.shape.size(); ++i)
+					if (! SuObject.equals3(x.slots[i], y.ivar(x.shape.name(i)), stack))
+						return false;
+			}
 			return true;
 		} finally {
 			stack.pop();
@@ -91,6 +91,10 @@ public class Database extends BuiltinClass {
 		return TheDbms.dbms().check();
 	}
 
+	public static Object Compact(Object self) {
+		return TheDbms.dbms().compact();
+	}
+
 	public static Object Nonce(Object self) {
 		return Util.bytesToString(TheDbms.dbms().nonce());
 	}
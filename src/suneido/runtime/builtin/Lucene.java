@@ -10,10 +10,8 @@ import java.nio.file.Paths;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.analysis.en.EnglishAnalyzer;
 import org.apache.lucene.document.*;
 import org.apache.lucene.index.*;
-import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
@@ -23,8 +21,6 @@ import org.apache.lucene.search.highlight.Highlighter;
 import org.apache.lucene.search.highlight.QueryScorer;
 import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
 import org.apache.lucene.search.highlight.TextFragment;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
 
 import suneido.SuException;
 import suneido.SuObject;
@@ -69,11 +65,14 @@ public class Lucene extends BuiltinClass {
 		Path path = getPath(a);
 		if (!path.toFile().exists())
 			return false;
-		try	(FSDirectory dir = FSDirectory.open(path);
-				DirectoryReader reader = DirectoryReader.open(dir)) {
-			new IndexSearcher(reader);
-			return true;
-		} catch (IOException e) {
+		try {
+			LuceneIndexes.Index index = LuceneIndexes.acquire(path);
+			try {
+				return index.search(searcher -> true);
+			} finally {
+				index.release();
+			}
+		} catch (Exception e) {
 			return false;
 		}
 	}
@@ -98,10 +97,26 @@ public class Lucene extends BuiltinClass {
 	// needs to be public to use BuiltinMethods
 	public static class Updater extends SuValue {
 		private static BuiltinMethods methods = new BuiltinMethods(Updater.class);
+		private final LuceneIndexes.Index index;
 		private final IndexWriter writer;
 
 		Updater(String dir, boolean create) {
-			writer = writer(dir, create);
+			Path path = Paths.get(dir);
+			boolean dirExists = path.toFile().exists();
+			if (!create && !dirExists)
+				throw dirNotFound("Update", path);
+			index = index(path);
+			try {
+				writer = index.startUpdate(create);
+			} catch (IOException e) {
+				index.release();
+				if (!dirExists && path.toFile().exists())
+					path.toFile().delete();
+				throw new SuException("Lucene.Update: can't open index", e);
+			} catch (RuntimeException e) {
+				index.release();
+				throw e;
+			}
 		}
 
 		@Override
@@ -154,29 +169,22 @@ public class Lucene extends BuiltinClass {
 			return null;
 		}
 
+		/** commits, the writer stays open for reuse */
 		void close() {
 			try {
-				writer.close();
+				index.endUpdate();
 			} catch (IOException e) {
 				throw new SuException("Lucene.Update: close failed", e);
+			} finally {
+				index.release();
 			}
 		}
 	}
 
-	static IndexWriter writer(String pathStr, boolean create) {
-		Path path = Paths.get(pathStr);
-		boolean dirExists = path.toFile().exists();
-		if (!create && !dirExists)
-			throw dirNotFound("Update", path);
+	private static LuceneIndexes.Index index(Path path) {
 		try {
-			Directory dir = FSDirectory.open(path);
-			Analyzer analyzer = analyzer();
-			IndexWriterConfig iwc = new IndexWriterConfig(analyzer);
-			iwc.setOpenMode(create ? OpenMode.CREATE : OpenMode.APPEND);
-			return new IndexWriter(dir, iwc);
+			return LuceneIndexes.acquire(path);
 		} catch (IOException e) {
-			if (!dirExists && path.toFile().exists())
-				path.toFile().delete();
 			throw new SuException("Lucene.Update: can't open index", e);
 		}
 	}
@@ -193,32 +201,12 @@ public class Lucene extends BuiltinClass {
 			throw dirNotFound("Search", path);
 		String queryStr = Ops.toStr(b);
 		int limit = Ops.toInt(c);
-		try (FSDirectory dir = FSDirectory.open(getPath(a));
-				IndexReader ir = DirectoryReader.open(dir)) {
-			IndexSearcher searcher = new IndexSearcher(ir);
-			Analyzer analyzer = analyzer();
-			QueryParser parser = new QueryParser("content", analyzer);
-			Query query = parser.parse(queryStr);
-			TopDocs results = searcher.search(query, limit);
-			SimpleHTMLFormatter htmlFormatter = new SimpleHTMLFormatter();
-			Highlighter highlighter = new Highlighter(htmlFormatter, new QueryScorer(query));
-			ScoreDoc[] hits = results.scoreDocs;
-			for (ScoreDoc hit : hits) {
-				int id = hit.doc;
-				Document doc  = ir.document(id);
-				String key = doc.get("key");
-				String content = doc.get("content");
-				TokenStream tokenStream = analyzer.tokenStream("content", content);
-				TextFragment[] frag = highlighter.getBestTextFragments(tokenStream,	content, false, 4);
-				SuObject fragments = new SuObject();
-
-				for (int j = 0; j < frag.length; j++) {
-					if ((frag[j] != null) && (frag[j].getScore() > 0)) {
-						fragments.add(frag[j].toString());
-					}
-				}
-
-				Ops.call2(d, key, fragments);
+		try {
+			LuceneIndexes.Index index = LuceneIndexes.acquire(path);
+			try {
+				index.search(searcher -> search(searcher, queryStr, limit, d));
+			} finally {
+				index.release();
 			}
 			return null;
 		} catch (Exception e) {
@@ -226,7 +214,32 @@ public class Lucene extends BuiltinClass {
 		}
 	}
 
-	private static Analyzer analyzer() {
-		return new EnglishAnalyzer();
+	private static Object search(IndexSearcher searcher, String queryStr,
+			int limit, Object block) throws Exception {
+		Analyzer analyzer = LuceneIndexes.analyzer;
+		QueryParser parser = new QueryParser("content", analyzer);
+		Query query = parser.parse(queryStr);
+		TopDocs results = searcher.search(query, limit);
+		SimpleHTMLFormatter htmlFormatter = new SimpleHTMLFormatter();
+		Highlighter highlighter = new Highlighter(htmlFormatter, new QueryScorer(query));
+		ScoreDoc[] hits = results.scoreDocs;
+		for (ScoreDoc hit : hits) {
+			int id = hit.doc;
+			Document doc  = searcher.doc(id);
+			String key = doc.get("key");
+			String content = doc.get("content");
+			TokenStream tokenStream = analyzer.tokenStream("content", content);
+			TextFragment[] frag = highlighter.getBestTextFragments(tokenStream,	content, false, 4);
+			SuObject fragments = new SuObject();
+
+			for (int j = 0; j < frag.length; j++) {
+				if ((frag[j] != null) && (frag[j].getScore() > 0)) {
+					fragments.add(frag[j].toString());
+				}
+			}
+
+			Ops.call2(block, key, fragments);
+		}
+		return null;
 	}
 }
@@ -0,0 +1,188 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.runtime.builtin;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import suneido.SuException;
+import suneido.Suneido;
+import suneido.util.Errlog;
+import suneido.util.ThreadSafe;
+
+/**
+ * Process wide, per directory, long lived Lucene writers and searchers,
+ * used by {@link Lucene}
+ * <p>
+ * The writer is only opened when the index is updated
+ * since it locks the index.
+ * Only one update at a time is allowed per index,
+ * as when each update opened its own writer.
+ * Searchers are refreshed after each update commits
+ * and before each search if the index has been changed by someone else.
+ * Directories that haven't been used for IDLE_MS are closed.
+ */
+@ThreadSafe
+class LuceneIndexes {
+	static long IDLE_MS = TimeUnit.MINUTES.toMillis(5);
+	/** Analyzer is thread safe */
+	static final Analyzer analyzer = new EnglishAnalyzer();
+	private static final ConcurrentHashMap<Path, Index> indexes =
+			new ConcurrentHashMap<>();
+	static {
+		Suneido.scheduleAtFixedRate(() -> closeIdle(IDLE_MS), 1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * @return The index for the path, with its use count incremented.
+	 * The caller must call release.
+	 */
+	static Index acquire(Path path) throws IOException {
+		path = path.toAbsolutePath().normalize();
+		while (true) {
+			Index index = indexes.get(path);
+			if (index == null) {
+				Index x = new Index(path);
+				index = indexes.putIfAbsent(path, x);
+				if (index == null)
+					index = x;
+				else
+					x.dir.close();
+			}
+			if (index.acquire())
+				return index;
+			indexes.remove(path, index); // closed, try again
+		}
+	}
+
+	/** close indexes that are not in use and haven't been used recently */
+	static void closeIdle(long idleMs) {
+		long now = System.currentTimeMillis();
+		for (Index index : indexes.values())
+			if (index.closeIfIdle(now, idleMs))
+				indexes.remove(index.path, index);
+	}
+
+	static class Index {
+		final Path path;
+		final Directory dir;
+		// the following are guarded by this
+		private IndexWriter writer;
+		private SearcherManager searchers;
+		private int users = 0;
+		private long lastUsed = System.currentTimeMillis();
+		private boolean closed = false;
+		private boolean updating = false;
+
+		Index(Path path) throws IOException {
+			this.path = path;
+			dir = FSDirectory.open(path);
+		}
+
+		private synchronized boolean acquire() {
+			if (closed)
+				return false;
+			++users;
+			return true;
+		}
+
+		synchronized void release() {
+			--users;
+			lastUsed = System.currentTimeMillis();
+		}
+
+		/**
+		 * Start an update, must be followed by endUpdate.
+		 * Throws if the index is already being updated.
+		 * @param create If true, existing contents of the index are deleted
+		 * @return The (shared) writer for this index
+		 */
+		synchronized IndexWriter startUpdate(boolean create) throws IOException {
+			if (updating)
+				throw new SuException("Lucene.Update: index is already being updated");
+			if (writer != null && ! writer.isOpen())
+				writer = null; // e.g. closed by an error
+			if (writer == null) {
+				IndexWriterConfig iwc = new IndexWriterConfig(analyzer);
+				iwc.setOpenMode(create ? OpenMode.CREATE : OpenMode.APPEND);
+				writer = new IndexWriter(dir, iwc);
+			} else if (create)
+				writer.deleteAll();
+			updating = true;
+			return writer;
+		}
+
+		/** commit the writer, refresh the searchers (if any), end the update */
+		void endUpdate() throws IOException {
+			IndexWriter w;
+			SearcherManager sm;
+			synchronized (this) {
+				assert updating;
+				w = writer;
+				sm = searchers;
+			}
+			try {
+				w.commit();
+				if (sm != null)
+					sm.maybeRefresh();
+			} finally {
+				synchronized (this) {
+					updating = false;
+				}
+			}
+		}
+
+		private synchronized SearcherManager searchers() throws IOException {
+			if (searchers == null)
+				searchers = new SearcherManager(dir, null);
+			return searchers;
+		}
+
+		/** Call fn with an up to date searcher */
+		<T> T search(Searcher<T> fn) throws Exception {
+			SearcherManager sm = searchers();
+			sm.maybeRefresh();
+			IndexSearcher searcher = sm.acquire();
+			try {
+				return fn.search(searcher);
+			} finally {
+				sm.release(searcher);
+			}
+		}
+
+		private synchronized boolean closeIfIdle(long now, long idleMs) {
+			if (users > 0 || now - lastUsed < idleMs)
+				return false;
+			closed = true;
+			try {
+				if (searchers != null)
+					searchers.close();
+				if (writer != null)
+					writer.close();
+				dir.close();
+			} catch (IOException e) {
+				Errlog.error("Lucene: error closing " + path, e);
+			}
+			return true;
+		}
+	}
+
+	interface Searcher<T> {
+		T search(IndexSearcher searcher) throws Exception;
+	}
+
+}
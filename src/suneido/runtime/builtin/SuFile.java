@@ -4,12 +4,20 @@
 
 package suneido.runtime.builtin;
 
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static suneido.util.Util.array;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.util.concurrent.locks.Lock;
+
+import com.google.common.util.concurrent.Striped;
 
 import suneido.SuException;
 import suneido.SuValue;
@@ -17,11 +25,36 @@ import suneido.runtime.*;
 import suneido.util.Dnum;
 import suneido.util.Util;
 
+/**
+ * Reads through a buffer that is shared by Read, Readline, Seek, and Tell.
+ * Large read only files are memory mapped (a window at a time) instead.
+ * Writes are not buffered, each Write or Writeline is a single write.
+ * <p>
+ * Operations are synchronized per file object.
+ * Appends also lock the file name so appends to the same file
+ * from different file objects (e.g. threads) don't interleave.
+ */
 public class SuFile extends SuValue {
 	private final String filename;
 	private final String mode;
 	private final boolean append;
-	private RandomAccessFile f;
+	private FileChannel f;
+	/** whether buf is a memory mapped window rather than a read buffer */
+	private final boolean mapped;
+	/** contains the file contents starting at bufPos */
+	private ByteBuffer buf = EMPTY;
+	private long bufPos = 0;
+	/** the current file position, may be in buf */
+	private long pos = 0;
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+	static int BUFFER_SIZE = 64 * 1024;
+	/** read only files at least this large are memory mapped */
+	static long MAP_MIN = 16 * 1024 * 1024;
+	static int MAP_SIZE = 64 * 1024 * 1024;
+	/** Windows won't delete files that are still mapped (until gc) */
+	private static final boolean CAN_MAP =
+			! System.getProperty("os.name").contains("Windows");
+	private static final Striped<Lock> appendLocks = Striped.lock(64);
 	private static final BuiltinMethods methods =
 			new BuiltinMethods("file", SuFile.class);
 
@@ -32,7 +65,7 @@ public class SuFile extends SuValue {
 		if ("w".equals(mode) && file.exists()) {
 			if (! file.delete())
 				throw new SuException("File: can't delete " + filename);
-			// can't rely on RandomAccessFile to create file
+			// can't rely on open to create file
 			// it fails intermittently on Windows
 			// 1000.Times() { PutFile("tester", "") }
 			try {
@@ -44,18 +77,18 @@ public class SuFile extends SuValue {
 			}
 		}
 		append = mode.startsWith("a");
+		boolean readonly = mode.equals("r");
 		try {
-			f = new RandomAccessFile(filename, mode.equals("r") ? "r" : "rw");
-		} catch (FileNotFoundException e) {
+			f = readonly
+					? FileChannel.open(Paths.get(filename), READ)
+					: FileChannel.open(Paths.get(filename), READ, WRITE, CREATE);
+			mapped = readonly && CAN_MAP && f.size() >= MAP_MIN;
+			if (append)
+				pos = f.size();
+		} catch (IOException e) {
 			throw new SuException("File: can't open '" + filename
 							+ "' in mode '" + mode + "'", e);
 		}
-		if (append)
-			try {
-				f.seek(f.length());
-			} catch (IOException e) {
-				throw new SuException("File io exception", e);
-			}
 	}
 
 	@Override
@@ -64,28 +97,38 @@ public class SuFile extends SuValue {
 	}
 
 	public static Object Flush(Object self) {
+		((SuFile) self).flush();
+		return null;
+	}
+
+	private synchronized void flush() {
 		try {
-			((SuFile) self).f.getChannel().force(true);
+			channel().force(true);
 		} catch (IOException e) {
 			throw new SuException("File Flush failed", e);
 		}
-		return null;
 	}
 
 	@Params("nbytes = INTMAX")
 	public static Object Read(Object self, Object a) {
-		RandomAccessFile f = ((SuFile) self).f;
-		int n = Ops.toInt(a);
-		long remaining;
+		return ((SuFile) self).read(Ops.toInt(a));
+	}
+
+	private synchronized Object read(int n) {
 		try {
-			remaining = f.length() - f.getFilePointer();
-			if (remaining == 0)
+			long remaining = channel().size() - pos;
+			if (remaining <= 0)
 				return Boolean.FALSE;
 			if (n > remaining)
 				n = (int) remaining;
-			byte buf[] = new byte[n];
-			f.readFully(buf);
-			return Util.bytesToString(buf);
+			byte bytes[] = new byte[n];
+			for (int i = 0; i < n && fill(); ) {
+				int k = (int) Math.min(n - i, bufPos + buf.limit() - pos);
+				buf.get((int) (pos - bufPos), bytes, i, k);
+				pos += k;
+				i += k;
+			}
+			return Util.bytesToString(bytes);
 		} catch (IOException e) {
 			throw new SuException("File Read failed", e);
 		}
@@ -93,12 +136,15 @@ public class SuFile extends SuValue {
 
 	// NOTE: Readline should be consistent across file, socket, and runpiped
 	public static Object Readline(Object self) {
-		RandomAccessFile f = ((SuFile) self).f;
+		return ((SuFile) self).readline();
+	}
+
+	private synchronized Object readline() {
 		// our own implementation to get Suneido's behavior
 		try {
 			StringBuilder sb = new StringBuilder();
 			while (true) {
-				int c = f.read();
+				int c = read();
 				if (c == -1)
 					if (sb.length() == 0)
 						return Boolean.FALSE;
@@ -115,34 +161,67 @@ public class SuFile extends SuValue {
 		}
 	}
 
+	/** @return The next byte, or -1 at the end of the file */
+	private int read() throws IOException {
+		if (! fill())
+			return -1;
+		return buf.get((int) (pos++ - bufPos)) & 0xff;
+	}
+
+	/**
+	 * Makes sure buf contains pos.
+	 * @return false if pos is at (or past) the end of the file
+	 */
+	private boolean fill() throws IOException {
+		if (bufPos <= pos && pos < bufPos + buf.limit())
+			return true;
+		long size = channel().size();
+		if (pos >= size)
+			return false;
+		if (mapped)
+			buf = f.map(MapMode.READ_ONLY, pos, Math.min(MAP_SIZE, size - pos));
+		else {
+			if (buf.capacity() == 0)
+				buf = ByteBuffer.allocate(BUFFER_SIZE);
+			buf.clear();
+			while (buf.hasRemaining() && f.read(buf, pos + buf.position()) > 0)
+				;
+			buf.flip();
+		}
+		bufPos = pos;
+		return buf.limit() > 0;
+	}
+
 	@Params("offset, origin='set'")
 	public static Object Seek(Object self, Object a, Object b) {
-		long offset = Numbers.longValue(a);
-		String origin = Ops.toStr(b);
-		RandomAccessFile f = ((SuFile) self).f;
+		((SuFile) self).seek(Numbers.longValue(a), Ops.toStr(b));
+		return null;
+	}
+
+	private synchronized void seek(long offset, String origin) {
 		try {
 			if (origin.equals("cur"))
-				offset += f.getFilePointer();
+				offset += pos;
 			else if (origin.equals("end"))
-				offset += f.length();
+				offset += channel().size();
 			else if (!origin.equals("set"))
 				throw new SuException(
 						"file.Seek: origin must be 'set', 'end', or 'cur'");
 			if (offset < 0)
 				offset = 0;
-			f.seek(offset);
+			pos = offset;
 		} catch (IOException e) {
 			throw new SuException("File Seek failed", e);
 		}
-		return null;
 	}
 
 	public static Object Tell(Object self) {
-		try {
-			return Dnum.from(((SuFile) self).f.getFilePointer());
-		} catch (IOException e) {
-			throw new SuException("File Tell failed", e);
-		}
+		return Dnum.from(((SuFile) self).tell());
+	}
+
+	private synchronized long tell() {
+		channel();
+		return pos;
 	}
 
 	@Params("string")
@@ -151,47 +230,57 @@ public class SuFile extends SuValue {
 		return a;
 	}
 
-	private void write(String s) {
-		try {
-			synchronized (SuFile.class) {
-				if (append)
-					f.seek(f.length());
-				f.writeBytes(s);
-			}
-		} catch (IOException e) {
-			throw new SuException("File Write failed", e);
-		}
-	}
-
 	@Params("string")
 	public static Object Writeline(Object self, Object a) {
-		((SuFile) self).writeline(Ops.coerceStr(a));
+		((SuFile) self).write(Ops.coerceStr(a) + "\r\n");
 		return a;
 	}
 
-	private void writeline(String s) {
+	private synchronized void write(String s) {
+		ByteBuffer src = ByteBuffer.wrap(Util.stringToBytes(s));
 		try {
-			synchronized (SuFile.class) {
-				if (append)
-					f.seek(f.length());
-				f.writeBytes(s);
-				f.writeBytes("\r\n");
-			}
+			if (append) {
+				Lock lock = appendLocks.get(
+						Paths.get(filename).toAbsolutePath().normalize());
+				lock.lock();
+				try {
+					pos = channel().size();
+					write(src);
+				} finally {
+					lock.unlock();
+				}
+			} else
+				write(src);
 		} catch (IOException e) {
 			throw new SuException("File Write failed", e);
 		}
 	}
 
+	private void write(ByteBuffer src) throws IOException {
+		long start = pos;
+		while (src.hasRemaining())
+			pos += channel().write(src, pos);
+		if (start < bufPos + buf.limit() && bufPos < pos)
+			buf.limit(0); // overwrote some of the buffer
+	}
+
+	private FileChannel channel() {
+		if (f == null)
+			throw new SuException("File: can't use closed file " + filename);
+		return f;
+	}
+
 	public static Object Close(Object self) {
 		((SuFile) self).close();
 		return null;
 	}
 
-	private void close() {
+	private synchronized void close() {
 		try {
 			if (f != null) {
 				f.close();
 				f = null;
+				buf = EMPTY;
 			}
 		} catch (IOException e) {
 			throw new SuException("File Close failed", e);
@@ -9,13 +9,46 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 
+/**
+ * Logs to the console and error.log
+ * <p>
+ * Callers just queue the message (lock free) so they aren't blocked
+ * by file i/o, a background thread writes them in batches,
+ * opening the file once per batch.
+ * If the queue is full, messages are dropped (and counted).
+ * Consecutive repeats of the same message are written once per batch
+ * followed by the number of repeats.
+ * fatal and flush write the queue synchronously.
+ */
 public class Errlog {
 	private static Supplier<String> extra = () -> "";
 	private static AtomicInteger count = new AtomicInteger();
 	private static final int LIMIT = 1000;
+	static String filename = "error.log";
+	private static final int QUEUE_LIMIT = 1000;
+	private static final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger queued = new AtomicInteger();
+	private static final AtomicInteger dropped = new AtomicInteger();
+	/** held while writing, by the writer thread or flush */
+	private static final ReentrantLock writeLock = new ReentrantLock();
+	// the following are guarded by writeLock
+	private static final SimpleDateFormat dateFormat =
+			new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+	private static String last = null;
+	private static int repeats = 0;
+	private static final Thread writer = new Thread(Errlog::writer, "Errlog");
+	static {
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(Errlog::flush));
+	}
 
 	public static void setExtra(Supplier<String> extra) {
 		Errlog.extra = extra;
@@ -52,6 +85,7 @@ public class Errlog {
 	public static void fatal(String s, Throwable e) {
 		Util.interruptableSleep(10); // give threads a chance to exit gracefully
 		log("FATAL ERROR", s, e);
+		flush();
 		System.exit(-1);
 	}
 
@@ -70,7 +104,7 @@ public class Errlog {
 		}
 	}
 
-	private static synchronized void log(String prefix, String s, Throwable e) {
+	private static void log(String prefix, String s, Throwable e) {
 		if (count.get() > LIMIT)
 			return;
 		if (count.getAndAdd(1) == LIMIT) {
@@ -83,24 +117,99 @@ public class Errlog {
 	private static void log_uncounted(String prefix, String s, Throwable e) {
 		if (! prefix.isEmpty())
 			prefix = prefix + ": ";
-		String sid = extra.get();
+		String sid = extra.get(); // in the caller's thread
 		if (! sid.isEmpty())
 			sid = sid + " ";
-		System.out.println(sid + prefix +
-				s + (s.isEmpty() ? "" : " ") +
-				(e == null ? "" : e));
-		try (PrintWriter pw = new PrintWriter(new FileWriter("error.log", true))) {
-			pw.append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()))
-				.append(" ")
-				.append(sid)
-				.append(prefix + s)
-				.println();
-			if (e != null) {
-				e.printStackTrace(pw);
+		if (queued.incrementAndGet() > QUEUE_LIMIT) {
+			queued.decrementAndGet();
+			dropped.incrementAndGet();
+			return;
+		}
+		queue.add(new Entry(System.currentTimeMillis(),
+				sid + prefix + s + (s.isEmpty() ? "" : " ") + (e == null ? "" : e),
+				sid + prefix + s, e));
+		LockSupport.unpark(writer);
+	}
+
+	private static class Entry {
+		final long time;
+		/** the console output, also used to detect repeats */
+		final String line;
+		final String msg;
+		final Throwable e;
+
+		Entry(long time, String line, String msg, Throwable e) {
+			this.time = time;
+			this.line = line;
+			this.msg = msg;
+			this.e = e;
+		}
+	}
+
+	private static void writer() {
+		while (true) {
+			if (queue.isEmpty())
+				LockSupport.park();
+			try {
+				flush();
+			} catch (Throwable e) {
+				System.err.println("error writing " + filename + " " + e);
+			}
+		}
+	}
+
+	/** Write any queued messages, returns after they have been written */
+	public static void flush() {
+		writeLock.lock();
+		try {
+			if (queue.isEmpty() && dropped.get() == 0)
+				return;
+			try (PrintWriter pw = new PrintWriter(new FileWriter(filename, true))) {
+				Entry x;
+				while (null != (x = queue.poll())) {
+					queued.decrementAndGet();
+					write(pw, x);
+				}
+				int n = dropped.getAndSet(0);
+				if (n > 0) {
+					String msg = "WARNING: error log queue full, dropped " + n;
+					write(pw, new Entry(System.currentTimeMillis(), msg, msg, null));
+				}
+				repeated(pw);
 			}
 		} catch (IOException e2) {
-			System.err.println("can't write to error.log " + e2);
+			System.err.println("can't write to " + filename + " " + e2);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	private static void write(PrintWriter pw, Entry x) {
+		if (x.line.equals(last)) {
+			++repeats;
+			return;
+		}
+		repeated(pw);
+		last = x.line;
+		System.out.println(x.line);
+		pw.append(dateFormat.format(new Date(x.time)))
+			.append(" ")
+			.append(x.msg)
+			.println();
+		if (x.e != null) {
+			x.e.printStackTrace(pw);
+		}
+	}
+
+	/** write the number of times the last message was repeated */
+	private static void repeated(PrintWriter pw) {
+		if (repeats > 0) {
+			String s = "(last message repeated " + repeats + " times)";
+			System.out.println(s);
+			pw.println(s);
 		}
+		repeats = 0;
+		last = null;
 	}
 
 	/** for tests */
@@ -84,6 +84,10 @@ import gnu.trove.list.array.TIntArrayList;
  * nextPossible skips ahead
  * so it doesn't just try amatch at every position
  * This makes match almost as fast as indexOf or contains
+ *
+ * Patterns without backreferences are matched by {@link RegexNfa}
+ * which takes linear time, unlike backtracking (amatch)
+ * which can take exponential time e.g. (a*)*b
  */
 public class Regex {
 
@@ -92,7 +96,7 @@ public class Regex {
 	}
 
 	public static class Result {
-		private static final int MAX_RESULTS = 10;
+		static final int MAX_RESULTS = 10;
 		private final int[] tmp = new int[MAX_RESULTS];
 		public final int[] pos = new int[MAX_RESULTS];
 		public final int[] end = new int[MAX_RESULTS];
@@ -127,9 +131,12 @@ public class Regex {
 	public static class Pattern {
 		private static final int ALT_INIT_CAPACITY = 100;
 		private final List<Element> pat;
+		/** null if the pattern has backreferences */
+		private final RegexNfa nfa;
 
 		private Pattern(List<Element> pat) {
 			this.pat = pat;
+			this.nfa = RegexNfa.handles(pat) ? new RegexNfa(pat) : null;
 		}
 
 		/**
@@ -137,6 +144,8 @@ public class Regex {
 		 * @return Result if a match is found, else null
 		 */
 		public Result firstMatch(String s, int pos) {
+			if (nfa != null)
+				return nfa.firstMatch(s, pos);
 			// allocate these once per match instead of once per amatch
 			Result result = new Result();
 			TIntArrayList alt_si = new TIntArrayList(ALT_INIT_CAPACITY);
@@ -152,10 +161,13 @@ public class Regex {
 
 		/**
 		 * Find the last match in the string before pos.
-		 * Does not use the nextPossible optimization so may be slower;
+		 * Without the NFA this does not use the nextPossible optimization
+		 * so may be slower.
 		 * @return Result if a match is found, else null
 		 */
 		public Result lastMatch(String s, int pos) {
+			if (nfa != null)
+				return nfa.lastMatch(s, pos);
 			Result result = new Result();
 			TIntArrayList alt_si = new TIntArrayList(ALT_INIT_CAPACITY);
 			TIntArrayList alt_pi = new TIntArrayList(ALT_INIT_CAPACITY);
@@ -171,6 +183,16 @@ public class Regex {
 		 * Calls action for each match in the string.
 		 */
 		public void forEachMatch(String s, ForEach action) {
+			if (nfa != null) {
+				Result result;
+				for (int si = 0; si <= s.length() &&
+						null != (result = nfa.firstMatch(s, si)); ) {
+					int si2 = action.each(result);
+					assert si2 > result.pos[0];
+					si = si2;
+				}
+				return;
+			}
 			Result result = new Result();
 			TIntArrayList alt_si = new TIntArrayList(ALT_INIT_CAPACITY);
 			TIntArrayList alt_pi = new TIntArrayList(ALT_INIT_CAPACITY);
@@ -190,6 +212,8 @@ public class Regex {
 		 * @return Result[] if it matches, else null
 		 */
 		public Result amatch(String s, int si) {
+			if (nfa != null)
+				return nfa.amatch(s, si);
 			return amatch(s, si, new Result(),
 					new TIntArrayList(ALT_INIT_CAPACITY),
 					new TIntArrayList(ALT_INIT_CAPACITY));
@@ -0,0 +1,306 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import suneido.SuInternalError;
+import suneido.util.Regex.Element;
+import suneido.util.Regex.Result;
+
+/**
+ * Linear time matching for {@link Regex} patterns without backreferences.
+ * <p>
+ * A Pike VM i.e. a Thompson NFA simulation that tracks captures per thread.
+ * All the threads advance one character at a time
+ * so the time is proportional to the string length times the pattern length,
+ * regardless of how much a backtracking matcher would retry.
+ * Threads are kept in priority order (the order backtracking would try them)
+ * and lower priority threads are cut when a thread matches,
+ * so the results are the same as the backtracking {@link Regex.Pattern}.
+ * <p>
+ * The compiled elements are translated to a simple instruction array,
+ * Chars are expanded to one instruction per character.
+ */
+@Immutable
+class RegexNfa {
+	private static final byte CHAR = 0;
+	private static final byte CHARI = 1; // ignore case, char is lower case
+	private static final byte ONE = 2; // single character element e.g. CharClass
+	private static final byte ASSERT = 3; // zero width element e.g. ^
+	private static final byte SPLIT = 4; // try arg first, then arg2
+	private static final byte JUMP = 5;
+	private static final byte LEFT = 6;
+	private static final byte RIGHT = 7;
+	private static final byte MATCH = 8;
+	private static final int NG = Result.MAX_RESULTS;
+	/** captures are tmp, pos, end for each group */
+	private static final int NCAPS = 3 * NG;
+	private final byte[] op;
+	private final int[] arg;
+	private final int[] arg2;
+	private final Element[] elem;
+	/** the first element, used to skip impossible start positions */
+	private final Element first;
+
+	/** @return Whether the pattern can be matched by RegexNfa */
+	static boolean handles(List<Element> pat) {
+		for (Element e : pat)
+			if (e instanceof Regex.Backref)
+				return false;
+		return true;
+	}
+
+	RegexNfa(List<Element> pat) {
+		int np = pat.size();
+		// map pattern indexes to instruction indexes
+		int[] map = new int[np + 1];
+		int n = 0;
+		for (int pi = 0; pi < np; ++pi) {
+			map[pi] = n;
+			Element e = pat.get(pi);
+			n += (e instanceof Regex.Chars) ? ((Regex.Chars) e).chars.length() : 1;
+		}
+		map[np] = n;
+		op = new byte[n + 1];
+		arg = new int[n + 1];
+		arg2 = new int[n + 1];
+		elem = new Element[n + 1];
+		for (int pi = 0; pi < np; ++pi) {
+			Element e = pat.get(pi);
+			int i = map[pi];
+			if (e instanceof Regex.Chars) {
+				String chars = ((Regex.Chars) e).chars;
+				byte o = (e instanceof Regex.CharsIgnoreCase) ? CHARI : CHAR;
+				for (int j = 0; j < chars.length(); ++j) {
+					op[i + j] = o;
+					arg[i + j] = chars.charAt(j);
+				}
+			} else if (e instanceof Regex.Branch) {
+				op[i] = SPLIT;
+				arg[i] = map[pi + ((Regex.Branch) e).main];
+				arg2[i] = map[pi + ((Regex.Branch) e).alt];
+			} else if (e instanceof Regex.Jump) {
+				op[i] = JUMP;
+				arg[i] = map[pi + ((Regex.Jump) e).offset];
+			} else if (e instanceof Regex.Left) {
+				op[i] = LEFT;
+				arg[i] = ((Regex.Left) e).idx;
+			} else if (e instanceof Regex.Right) {
+				op[i] = RIGHT;
+				arg[i] = ((Regex.Right) e).idx;
+			} else if (e instanceof Regex.CharClass ||
+					e instanceof Regex.CharClassIgnoreCase) {
+				op[i] = ONE;
+				elem[i] = e;
+			} else {
+				op[i] = ASSERT;
+				elem[i] = e;
+			}
+		}
+		op[n] = MATCH;
+		first = pat.get(1); // skip LEFT0
+	}
+
+	/**
+	 * Find the first (leftmost) match at or after pos.
+	 * @return Result if a match is found, else null
+	 */
+	Result firstMatch(String s, int pos) {
+		return new Run(s).match(pos, false);
+	}
+
+	/**
+	 * Find the last match that starts at or before pos,
+	 * with one forward pass rather than trying each start position.
+	 * @return Result if a match is found, else null
+	 */
+	Result lastMatch(String s, int pos) {
+		return new Run(s).matchLast(pos);
+	}
+
+	/**
+	 * Match starting at a specific position.
+	 * @return Result if it matches, else null
+	 */
+	Result amatch(String s, int si) {
+		return new Run(s).match(si, true);
+	}
+
+	/** The state for one match */
+	private class Run {
+		private final String s;
+		private final int sn;
+		/** the threads at the current position */
+		private Threads clist;
+		/** the threads at the next position */
+		private Threads nlist;
+		private int[] matched = null;
+
+		Run(String s) {
+			this.s = s;
+			sn = s.length();
+			clist = new Threads(op.length);
+			nlist = new Threads(op.length);
+		}
+
+		Result match(int pos, boolean anchored) {
+			int start = pos; // the next possible start position
+			for (int si = pos; ; ) {
+				if (matched == null && si == start) {
+					// lowest priority so earlier starts are preferred
+					add(clist, 0, initCaps(), si);
+					start = anchored ? -1 : first.nextPossible(s, si, sn);
+				}
+				step(si);
+				if (si >= sn)
+					break;
+				swap();
+				++si;
+				if (clist.n == 0) {
+					if (matched != null || anchored || start > sn)
+						break;
+					if (si < start)
+						si = start; // skip positions that can't start a match
+				}
+			}
+			return matched == null ? null : result(matched);
+		}
+
+		/**
+		 * Start a thread at every position up to pos.
+		 * Later starts are added ahead of the existing threads
+		 * so they have priority and a later match replaces an earlier one.
+		 */
+		Result matchLast(int pos) {
+			add(clist, 0, initCaps(), 0);
+			for (int si = 0; ; ) {
+				if (si < pos)
+					add(nlist, 0, initCaps(), si + 1);
+				step(si);
+				if (si >= sn)
+					break;
+				swap();
+				++si;
+				if (clist.n == 0 && si >= pos)
+					break;
+			}
+			return matched == null ? null : result(matched);
+		}
+
+		/** advance the threads in clist past si, adding them to nlist */
+		private void step(int si) {
+			char c = si < sn ? s.charAt(si) : 0;
+			for (int t = 0; t < clist.n; ++t) {
+				int pc = clist.pc[t];
+				int[] caps = clist.caps[t];
+				switch (op[pc]) {
+				case CHAR:
+					if (si < sn && c == arg[pc])
+						add(nlist, pc + 1, caps, si + 1);
+					break;
+				case CHARI:
+					if (si < sn && Character.toLowerCase(c) == arg[pc])
+						add(nlist, pc + 1, caps, si + 1);
+					break;
+				case ONE:
+					if (elem[pc].omatch(s, si) == si + 1)
+						add(nlist, pc + 1, caps, si + 1);
+					break;
+				case MATCH:
+					matched = caps;
+					return; // cut lower priority threads
+				default:
+					throw SuInternalError.unreachable();
+				}
+			}
+		}
+
+		private void swap() {
+			Threads tmp = clist;
+			clist = nlist;
+			nlist = tmp;
+			nlist.n = 0;
+		}
+
+		/**
+		 * Add a thread at position si,
+		 * following jumps, splits, captures, and assertions.
+		 * Each instruction is only added once per position,
+		 * the first (highest priority) thread to reach it wins.
+		 */
+		private void add(Threads list, int pc, int[] caps, int si) {
+			if (list.mark[pc] == si + 1)
+				return;
+			list.mark[pc] = si + 1;
+			switch (op[pc]) {
+			case SPLIT:
+				add(list, arg[pc], caps, si);
+				add(list, arg2[pc], caps, si);
+				break;
+			case JUMP:
+				add(list, arg[pc], caps, si);
+				break;
+			case LEFT:
+				if (arg[pc] < NG) {
+					caps = caps.clone();
+					caps[arg[pc]] = si;
+				}
+				add(list, pc + 1, caps, si);
+				break;
+			case RIGHT:
+				int i = arg[pc];
+				if (i < NG) {
+					caps = caps.clone();
+					caps[NG + i] = caps[i];
+					caps[2 * NG + i] = si;
+				}
+				add(list, pc + 1, caps, si);
+				break;
+			case ASSERT:
+				if (elem[pc].omatch(s, si) == si)
+					add(list, pc + 1, caps, si);
+				break;
+			default:
+				list.add(pc, caps);
+			}
+		}
+	}
+
+	private static int[] initCaps() {
+		int[] caps = new int[NCAPS];
+		Arrays.fill(caps, 2 * NG, NCAPS, -1);
+		return caps;
+	}
+
+	private static Result result(int[] caps) {
+		Result result = new Result();
+		System.arraycopy(caps, NG, result.pos, 0, NG);
+		System.arraycopy(caps, 2 * NG, result.end, 0, NG);
+		return result;
+	}
+
+	private static class Threads {
+		final int[] pc;
+		final int[][] caps;
+		int n = 0;
+		/** position + 1 that each instruction was last added for */
+		final int[] mark;
+
+		Threads(int size) {
+			pc = new int[size];
+			caps = new int[size][];
+			mark = new int[size];
+		}
+
+		void add(int pc, int[] caps) {
+			this.pc[n] = pc;
+			this.caps[n] = caps;
+			++n;
+		}
+	}
+
+}
@@ -4,10 +4,15 @@
 
 package suneido;
 
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import suneido.database.immudb.Record;
+import suneido.database.immudb.RecordBuilder;
 import suneido.runtime.Pack;
 
 
@@ -21,4 +26,30 @@ public class SuRecordTest {
 		assertEquals(x, Pack.unpack(Pack.pack(x)));
 	}
 
+	@Test
+	public void test_lazy_fields() {
+		Record rec = new RecordBuilder()
+				.add(123).add("hello").add("").add("b,c").add(456).build();
+		SuRecord x = new SuRecord(rec,
+				asList("a", "b", "c", "a_deps", "-"), null);
+		assertEquals(123, x.get("a"));
+		assertEquals("", x.get("c")); // empty fields are not added
+		assertFalse(x.containsKey("c"));
+		assertEquals("b,c", x.getdeps("a"));
+		x.put("b", "world");
+		assertEquals("world", x.get("b"));
+		assertTrue(x.delete("a"));
+		assertFalse(x.containsKey("a"));
+		assertEquals(1, x.size());
+
+		x = new SuRecord(rec, asList("a", "b"), null);
+		SuRecord y = new SuRecord();
+		y.put("a", 123);
+		y.put("b", "hello");
+		assertEquals(y, x);
+		assertEquals(y.toString(), x.toString());
+		assertEquals(y, Pack.unpack(Pack.pack(x)));
+		assertEquals(y, new SuRecord(x));
+	}
+
 }
@@ -217,19 +217,19 @@ public class CompileTest {
  				"&a, b, call, null?, AASTORE");
 
 		test("a.Size()",
-				"a, 'Size', invoke0, ARETURN");
+				"a, invoke0 'Size', ARETURN");
 		test("(a = b).F()",
-				"&a, b, DUP_X2, AASTORE, 'F', invoke0, ARETURN");
+				"&a, b, DUP_X2, AASTORE, invoke0 'F', ARETURN");
 		test("return a.Size()",
-				"a, 'Size', invoke0, ARETURN");
+				"a, invoke0 'Size', ARETURN");
 		test("a['Size']()",
 				"a, 'Size', toMethodString, invoke0, ARETURN");
 		test("a.Substr(b, c)",
-				"a, 'Substr', b, c, invoke2, ARETURN");
+				"a, b, c, invoke2 'Substr', ARETURN");
 		test(".f()",
-				"self, 'f', invoke0, ARETURN");
+				"self, invoke0 'f', ARETURN");
 		test("this.f()",
-				"self, 'f', invoke0, ARETURN");
+				"self, invoke0 'f', ARETURN");
 		test("this[a]()",
 				"self, a, toMethodString, invoke0, ARETURN");
 		test("a(123, x: 456)",
@@ -237,7 +237,7 @@ public class CompileTest {
 		test("a(99: 'x')",
 				"a, NAMED, 99, 'x', call, ARETURN");
 		test("A().B()",
-				"this, A, global call, 'B', invoke0, ARETURN");
+				"this, A, global call, invoke0 'B', ARETURN");
 
 		test("super.F()",
 				"this, self, 'F', superInvoke, ARETURN");
@@ -650,10 +650,27 @@ public class CompileTest {
 		for (String[] simp : simplify)
 			r = r.replace(simp[0], simp[1]);
 		r = r.replaceAll("[0-9]+, blockReturn", "blockReturn");
+		r = inlineCacheInvoke(r);
 		r = globalSlotToName(r);
 		return r;
 	}
 
+	/** e.g. a, b, invoke1 'Foo' */
+	private static String inlineCacheInvoke(String r) {
+		Pattern p = Pattern.compile("INVOKEDYNAMIC invoke\\(((Object;)+)\\)Object; " +
+				"\\[, // handle kind 0x6 : INVOKESTATIC, [^ ]*InlineCache.bootstrap[^ ]*, " +
+				"// arguments:, ('[^']*'), \\]");
+		Matcher m = p.matcher(r);
+		StringBuffer sb = new StringBuffer();
+		while (m.find()) {
+			int nargs = m.group(1).length() / "Object;".length() - 1;
+			m.appendReplacement(sb,
+					Matcher.quoteReplacement("invoke" + nargs + " " + m.group(3)));
+		}
+		m.appendTail(sb);
+		return sb.toString();
+	}
+
 	private static String globalSlotToName(String r) {
 		Pattern p = Pattern.compile("this, ([0-9]+), (EACH, const0, )?global");
 		Matcher m = p.matcher(r);
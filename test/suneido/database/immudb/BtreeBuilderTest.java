@@ -0,0 +1,113 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.immudb;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BtreeBuilderTest {
+	private final Storage istor = new HeapStorage();
+	private final Tran tran = new Tran(new HeapStorage(), istor);
+	private final Random rand = new Random(123);
+
+	private static class Btree4 extends Btree {
+		@Override public int splitSize() { return 4; }
+		public Btree4(Tran tran) {
+			super(tran);
+		}
+	}
+
+	@Test
+	public void sizes() {
+		for (int n : new int[] { 0, 1, 4, 5, 16, 17, 64, 65, 1000 })
+			build(n);
+	}
+
+	@Test
+	public void duplicates() {
+		List<BtreeKey> keys = new ArrayList<>();
+		for (int i = 1; i <= 500; ++i)
+			keys.add(key("k" + rand.nextInt(20), i));
+		build(keys);
+	}
+
+	@Test
+	public void not_empty() {
+		Btree btree = new Btree4(tran);
+		List<BtreeKey> keys = new ArrayList<>();
+		for (int i = 1; i <= 50; ++i) {
+			BtreeKey key = key("a" + i, i);
+			btree.add(key);
+			keys.add(key);
+		}
+		BtreeBuilder builder = new BtreeBuilder(btree);
+		for (int i = 51; i <= 100; ++i) {
+			BtreeKey key = key("b" + i, i);
+			builder.add(key);
+			keys.add(key);
+		}
+		builder.finish();
+		check(btree, keys);
+	}
+
+	private void build(int n) {
+		List<BtreeKey> keys = new ArrayList<>();
+		for (int i = 1; i <= n; ++i)
+			keys.add(key("k" + rand.nextInt(1_000_000), i));
+		build(keys);
+	}
+
+	private void build(List<BtreeKey> keys) {
+		Btree btree = new Btree4(tran);
+		BtreeBuilder builder = new BtreeBuilder(btree);
+		for (BtreeKey key : keys)
+			builder.add(key);
+		builder.finish();
+		check(btree, keys);
+		// normal updates after building
+		keys = new ArrayList<>(keys);
+		for (int i = 0; i < 20; ++i) {
+			BtreeKey key = key("k" + rand.nextInt(1_000_000), 10_000 + i);
+			btree.add(key, false);
+			keys.add(key);
+		}
+		check(btree, keys);
+	}
+
+	private static void check(Btree btree, List<BtreeKey> keys) {
+		btree.check();
+		assertThat(btree.totalSize(), equalTo(totalSize(keys)));
+		keys = new ArrayList<>(keys);
+		Collections.sort(keys);
+		Btree.Iter iter = btree.iterator();
+		for (BtreeKey key : keys) {
+			iter.next();
+			assertThat(iter.cur(), equalTo(key));
+		}
+		iter.next();
+		assertThat(iter.eof(), equalTo(true));
+		for (BtreeKey key : keys)
+			assertThat(btree.get(key) != 0, equalTo(true));
+	}
+
+	private static int totalSize(List<BtreeKey> keys) {
+		int n = 0;
+		for (BtreeKey key : keys)
+			n += key.keySize();
+		return n;
+	}
+
+	private static BtreeKey key(String s, int adr) {
+		return new RecordBuilder().add(s).btreeKey(adr);
+	}
+
+}
@@ -9,6 +9,8 @@ import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -477,6 +479,27 @@ public class BtreeTest {
 		assertThat("i 2", iter.curKey().getString(0), equalTo("test2"));
 	}
 
+	@Test
+	public void stored_nodes_shared_via_cache() {
+		rand = new Random(1291681);
+		add(NKEYS);
+		btree.freeze();
+		BtreeDbNode root = btree.rootNode.store(stor);
+		BtreeInfo info = new BtreeInfo(root.address(),
+				btree.treeLevels, btree.nnodes, btree.totalSize);
+		long hits = BtreeNodeCache.stats().hitCount();
+		Btree b1 = new Btree4(new Tran(stor, stor), info);
+		Btree b2 = new Btree4(new Tran(stor, stor), info);
+		assertSame(root, b1.rootNode);
+		assertSame(b1.rootNode, b2.rootNode);
+		assertThat(BtreeNodeCache.stats().hitCount(), greaterThan(hits));
+		btree = b2;
+		check();
+		checkIterate();
+		BtreeNodeCache.invalidate(stor);
+		assertNotSame(root, new Btree4(new Tran(stor, stor), info).rootNode);
+	}
+
 	@Test
 	public void unique() {
 		rand = new Random(1291681);
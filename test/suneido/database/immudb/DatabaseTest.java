@@ -12,6 +12,7 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
 import java.util.List;
+import java.util.stream.IntStream;
 
 import org.junit.Test;
 
@@ -369,4 +370,52 @@ public class DatabaseTest extends TestBase {
 		t1.ck_complete();
 	}
 
+	@Test
+	public void persist_while_committing() {
+		makeTable("untouched", 200);
+		makeTable("touched", 200);
+		Persist p = Persist.store(db);
+		addRecords("touched", 200, 209); // committed while persisting
+		db.withCommitLock(() -> p.publish(db));
+
+		// untouched is replaced by its stored version
+		assertThat(rootNode("untouched") instanceof BtreeDbNode, equalTo(true));
+		// touched keeps its changes but releases the nodes that were stored
+		BtreeNode touched = rootNode("touched");
+		assertThat(touched instanceof BtreeMemNode, equalTo(true));
+		assertThat(touched.level > 0, equalTo(true));
+		assertThat(storedMemNodes(touched), equalTo(0));
+		check("untouched", range(0, 200));
+		check("touched", range(0, 210));
+
+		db = db.reopen();
+		check("untouched", range(0, 200));
+		check("touched", range(0, 210));
+		assertEquals("", db.check());
+	}
+
+	private BtreeNode rootNode(String tablename) {
+		int tblnum = getTable(tablename).num;
+		TableInfo ti = (TableInfo) db.state.dbinfo.get(tblnum);
+		return ti.indexInfo.get(0).rootNode;
+	}
+
+	/** @return The number of reachable memory nodes that have been stored */
+	private static int storedMemNodes(BtreeNode node) {
+		if (! (node instanceof BtreeMemNode))
+			return 0;
+		int n = (node.address() != 0) ? 1 : 0;
+		if (node.isTree())
+			for (int i = 0; i < node.size(); ++i) {
+				BtreeNode child = ((BtreeTreeKey) node.get(i)).child();
+				if (child != null)
+					n += storedMemNodes(child);
+			}
+		return n;
+	}
+
+	private static int[] range(int from, int to) {
+		return IntStream.range(from, to).toArray();
+	}
+
 }
@@ -4,10 +4,21 @@
 
 package suneido.database.immudb;
 
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 
 import org.junit.Test;
 
+import suneido.SuException;
+import suneido.database.query.Request;
+import suneido.util.FileUtils;
+
 public class DbCompactTest extends TestBase {
 
 	@Test
@@ -21,6 +32,137 @@ public class DbCompactTest extends TestBase {
 		compact();
 	}
 
+	@Test
+	public void online() {
+		makeTable("dropped", 2);
+		db.dropTable("dropped"); // so table numbers differ
+		makeTable(6);
+		Database dstdb = Dbpkg.testdb();
+		DbCompact dc = new DbCompact(db, dstdb);
+		dc.copy();
+		// commits after the snapshot
+		addRecords("test", 6, 7);
+		remove(2);
+		update(4, record(40));
+		UpdateTransaction t = updateTransaction();
+		remove(t, 5);
+		t.abort();
+		dc.catchUp();
+		remove(0);
+		boolean[] switched = { false };
+		dc.finish(() -> switched[0] = true);
+		assertEquals(true, switched[0]);
+		check(1, 3, 5, 6, 7, 40);
+		assertEquals("", dstdb.check());
+		db = dstdb;
+		check(1, 3, 5, 6, 7, 40);
+	}
+
+	@Test
+	public void online_dropped_column() {
+		Request.execute(db, "create sq (x, a, b) key(a) index(b)");
+		UpdateTransaction t = updateTransaction();
+		for (int i = 0; i < 4; ++i)
+			t.addRecord("sq", rec("x" + i, i, "b" + i));
+		t.ck_complete();
+		Request.execute(db, "alter sq drop (x)");
+		Database dstdb = Dbpkg.testdb();
+		DbCompact dc = new DbCompact(db, dstdb);
+		dc.copy();
+		// commits after the snapshot, in the old field layout
+		t = updateTransaction();
+		int tblnum = t.getTable("sq").num();
+		t.addRecord(tblnum, rec("x9", 9, "b9"));
+		t.updateRecord(tblnum, t.lookup(tblnum, "a", key(1)), rec("x1", 1, "b11"));
+		t.removeRecord(tblnum, t.lookup(tblnum, "a", key(2)));
+		t.ck_complete();
+		dc.catchUp();
+		dc.finish(() -> {});
+		assertEquals("", dstdb.check());
+		db = dstdb;
+		assertEquals(Arrays.asList(rec(0, "b0"), rec(1, "b11"), rec(3, "b3"),
+				rec(9, "b9")), get("sq"));
+		t = updateTransaction();
+		tblnum = t.getTable("sq").num();
+		assertEquals(rec(9, "b9"), t.lookup(tblnum, "a", key(9)));
+		t.ck_complete();
+	}
+
+	@Test
+	public void online_schema_change() {
+		makeTable(4);
+		DbCompact dc = new DbCompact(db, Dbpkg.testdb());
+		dc.copy();
+		makeTable("another");
+		try {
+			dc.catchUp();
+			fail();
+		} catch (SuException e) {
+			assertThat(e.getMessage(), containsString("schema change"));
+		}
+	}
+
+	@Test
+	public void online_files() {
+		String filename = FileUtils.tempfile("d", "i", "c").toString();
+		db = Database.create(filename);
+		try {
+			makeTable(5);
+			UpdateTransaction t = updateTransaction();
+			t.addRecord("test", record(9));
+			Database[] reopened = { null };
+			Dbpkg.compactOnline(db, x -> reopened[0] = x);
+			db = reopened[0];
+			try {
+				t.ck_complete();
+				fail();
+			} catch (SuException e) {
+				assertThat(e.getMessage(), containsString("retry"));
+			}
+			check(0, 1, 2, 3, 4);
+			assertEquals("", db.check());
+		} finally {
+			db.close();
+			deleteDb(filename);
+		}
+	}
+
+	@Test
+	public void online_replace_failure_restores() throws IOException {
+		String filename = FileUtils.tempfile("d", "i", "c").toString();
+		String tempfile = FileUtils.tempfile("d", "i", "c").toString();
+		db = Database.create(filename);
+		try {
+			makeTable(3);
+			db.close();
+			Database bad = Database.create(tempfile);
+			bad.close();
+			new File(tempfile + "d").delete();
+			new File(tempfile + "d").createNewFile(); // so open fails
+			Database[] reopened = { null };
+			try {
+				Dbpkg.replaceDb(tempfile, filename, x -> reopened[0] = x);
+				fail();
+			} catch (SuException e) {
+				assertThat(e.getMessage(), containsString("could not open database"));
+			}
+			db = reopened[0];
+			check(0, 1, 2);
+		} finally {
+			db.close();
+			deleteDb(filename);
+			deleteDb(tempfile);
+		}
+	}
+
+	private static void deleteDb(String filename) {
+		new File(filename).delete();
+		for (String ext : new String[] { "d", "i", "c" }) {
+			new File(filename + ext).delete();
+			new File(filename + ext + ".bak").delete();
+		}
+	}
+
 	private void compact() {
 		Database dstdb = Dbpkg.testdb();
 		Dbpkg.compact(db, dstdb);
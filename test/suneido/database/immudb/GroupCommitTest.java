@@ -0,0 +1,118 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.immudb;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class GroupCommitTest extends TestBase {
+
+	@Before
+	public void enable() {
+		GroupCommit.enabled = true;
+	}
+
+	@After
+	public void disable() {
+		GroupCommit.enabled = false;
+		db.checkTransEmpty();
+	}
+
+	@Test
+	public void single() {
+		makeTable();
+		addRecords("test", 1, 3);
+		check(1, 2, 3);
+	}
+
+	@Test
+	public void batch() {
+		makeTable();
+		Transaction t1 = db.updateTransaction();
+		t1.addRecord("test", record(1));
+		Transaction t2 = db.updateTransaction();
+		t2.addRecord("test", record(2));
+		Transaction t3 = db.updateTransaction();
+		t3.addRecord("test", record(3));
+		String[] results = commitTogether(t1, t2, t3);
+		for (String result : results)
+			assertNull(result);
+		assertThat(db.groupCommit.toString(),
+				equalTo("GroupCommit batches 1 commits 3"));
+		check(1, 2, 3);
+		assertThat(getNrecords("test"), equalTo(3));
+	}
+
+	@Test
+	public void conflict_within_batch() {
+		makeTable(5);
+		Transaction t1 = db.updateTransaction();
+		remove(t1, 3);
+		Transaction t2 = db.updateTransaction();
+		remove(t2, 3);
+		String[] results = commitTogether(t1, t2);
+		if (results[0] == null)
+			assertThat(results[1], containsString("conflict"));
+		else {
+			assertThat(results[0], containsString("conflict"));
+			assertNull(results[1]);
+		}
+		check(0, 1, 2, 4);
+	}
+
+	@Test
+	public void duplicate_within_batch() {
+		makeTable();
+		Transaction t1 = db.updateTransaction();
+		t1.addRecord("test", record(7));
+		Transaction t2 = db.updateTransaction();
+		t2.addRecord("test", record(7));
+		String[] results = commitTogether(t1, t2);
+		assertThat((results[0] == null) != (results[1] == null), equalTo(true));
+		check(7);
+	}
+
+	/**
+	 * Holds the commit lock while the transactions queue up
+	 * so they are committed as a single batch
+	 */
+	private String[] commitTogether(Transaction... ts) {
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Thread holder = new Thread(() -> db.withCommitLock(() -> {
+			locked.countDown();
+			Uninterruptibles.awaitUninterruptibly(release);
+		}));
+		holder.start();
+		Uninterruptibles.awaitUninterruptibly(locked);
+
+		String[] results = new String[ts.length];
+		Thread[] threads = new Thread[ts.length];
+		for (int i = 0; i < ts.length; ++i) {
+			int j = i;
+			threads[i] = new Thread(() -> results[j] = ts[j].complete());
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			while (thread.getState() != Thread.State.TIMED_WAITING)
+				Thread.yield();
+		release.countDown();
+		for (Thread thread : threads)
+			Uninterruptibles.joinUninterruptibly(thread);
+		Uninterruptibles.joinUninterruptibly(holder);
+		return results;
+	}
+
+}
@@ -5,9 +5,14 @@
 package suneido.database.immudb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
 
 import org.junit.Test;
 
+import suneido.SuDate;
+
 public class HistoryIteratorTest extends TestBase {
 
 	@Test
@@ -30,6 +35,65 @@ public class HistoryIteratorTest extends TestBase {
 				"delete 2", "create 22");
 	}
 
+	@Test
+	public void test_persisted() {
+		makeTable(2);
+		db.persist();
+		remove(1);
+		addRecords("test", 2, 3);
+		db = db.reopen();
+		update(2, rec(22));
+		history("create 0", "create 1", "delete 1", "create 2", "create 3",
+				"delete 2", "create 22");
+	}
+
+	/** commits while persist is storing are left for the next persist */
+	@Test
+	public void test_commits_while_persisting() {
+		makeTable(2);
+		Persist p = Persist.store(db);
+		remove(1);
+		addRecords("test", 2, 3);
+		db.withCommitLock(() -> p.publish(db));
+		history("create 0", "create 1", "delete 1", "create 2", "create 3");
+		db = db.reopen();
+		check(0, 2, 3);
+		update(2, rec(22));
+		history("create 0", "create 1", "delete 1", "create 2", "create 3",
+				"delete 2", "create 22");
+		assertEquals("", db.check());
+	}
+
+	/** simulate a table from before the history index */
+	@Test
+	public void test_unindexed() {
+		makeTable(2);
+		remove(1);
+		addRecords("test", 2, 3);
+		update(2, rec(22));
+		int[] commits = addresses().commits;
+		for (int n = 0; n <= commits.length; ++n) {
+			history = new TableHistory.Addresses(
+					Arrays.copyOfRange(commits, n, commits.length), true);
+			history("create 0", "create 1", "delete 1", "create 2", "create 3",
+					"delete 2", "create 22");
+		}
+	}
+
+	@Test
+	public void test_select() {
+		makeTable(2);
+		remove(1);
+		SuDate now = SuDate.now();
+		SuDate past = now.plus(0, 0, -1, 0, 0, 0, 0);
+		SuDate future = now.plus(0, 0, 1, 0, 0, 0, 0);
+		select(past, future, "create 0", "create 1", "delete 1");
+		select(null, future, "create 0", "create 1", "delete 1");
+		select(past, null, "create 0", "create 1", "delete 1");
+		select(future, null);
+		select(null, past);
+	}
+
 	@Test
 	public void test_schema() {
 		history("tables", 1, "create tables", "create columns", "create indexes",
@@ -40,26 +104,51 @@ public class HistoryIteratorTest extends TestBase {
 		history("test", 0, expected);
 	}
 
+	private TableHistory.Addresses history = null;
+
+	private TableHistory.Addresses addresses() {
+		return addresses("test");
+	}
+
+	private TableHistory.Addresses addresses(String tablename) {
+		ReadTransaction t = db.readTransaction();
+		return TableHistory.addresses(db.istor,
+				t.getTableInfo(t.getTable(tablename).num()));
+	}
+
+	private void select(SuDate from, SuDate to, String... expected) {
+		HistoryIterator iter = iterator("test");
+		iter.select(from, to);
+		check(iter, 0, expected);
+	}
+
+	private HistoryIterator iterator(String tablename) {
+		int tblnum = db.readTransaction().getTable(tablename).num();
+		return new HistoryIterator(db.dstor, tblnum,
+				history != null ? history : addresses(tablename));
+	}
+
 	private void history(String tablename, int fld, String... expected) {
-		Transaction t = db.readTransaction();
-		int tblnum = t.getTable(tablename).num();
+		check(iterator(tablename), fld, expected);
+	}
+
+	private static void check(HistoryIterator iter, int fld, String... expected) {
 		// forward
-		HistoryIterator iter = new HistoryIterator(db.dstor, tblnum);
 		for (String expect : expected) {
 			Record[] x = iter.getNext();
 			//System.out.println(x[0].get(1) + " " + x[1].get(fld));
 			assertEquals(expect, x[0].get(1) + " " + x[1].get(fld));
 		}
-		assert iter.getNext() == null;
+		assertNull(iter.getNext());
 
 		// reverse
-		iter = new HistoryIterator(db.dstor, tblnum);
+		iter.rewind();
 		for (int i = expected.length - 1; i >= 0; --i) {
 			String expect = expected[i];
 			Record[] x = iter.getPrev();
 			assertEquals(expect, x[0].get(1) + " " + x[1].get(fld));
 		}
-		assert iter.getPrev() == null;
+		assertNull(iter.getPrev());
 	}
 
 }
@@ -0,0 +1,58 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.immudb;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class PipelineTest {
+
+	@Test
+	public void items() {
+		try (Pipeline<Integer> p = new Pipeline<>("test", out -> {
+				for (int i = 0; i < 5000; ++i)
+					out.accept(i);
+			})) {
+			for (int i = 0; i < 5000; ++i)
+				assertThat(p.take(), equalTo(i));
+			assertThat(p.take(), nullValue());
+			assertThat(p.take(), nullValue());
+		}
+	}
+
+	@Test
+	public void failure() {
+		try (Pipeline<Integer> p = new Pipeline<>("test", out -> {
+				out.accept(1);
+				throw new RuntimeException("oops");
+			})) {
+			assertThat(p.take(), equalTo(1));
+			try {
+				p.take();
+				fail();
+			} catch (RuntimeException e) {
+				assertThat(e.getCause().getMessage(), equalTo("oops"));
+			}
+		}
+	}
+
+	@Test
+	public void close_early() throws InterruptedException {
+		Thread[] producer = new Thread[1];
+		try (Pipeline<Integer> p = new Pipeline<>("test", out -> {
+				producer[0] = Thread.currentThread();
+				for (int i = 0; ; ++i)
+					out.accept(i);
+			})) {
+			assertThat(p.take(), equalTo(0));
+		}
+		producer[0].join(); // blocked producer is stopped
+	}
+
+}
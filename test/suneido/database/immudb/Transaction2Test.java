@@ -370,6 +370,59 @@ public class Transaction2Test extends TestBase {
 		t1.ck_complete();
 	}
 
+	@Test
+	public void parallel_btree_update() {
+		makeWideTable();
+		Transaction t = db.updateTransaction();
+		for (int i = 0; i < 200; ++i)
+			t.addRecord("wide", wideRecord(i));
+		t.ck_complete();
+
+		t = db.readTransaction();
+		int tblnum = t.getTable("wide").num();
+		for (String cols : new String[] { "a", "b", "c", "d", "e" }) {
+			IndexIter iter = t.iter(tblnum, cols);
+			int n = 0;
+			for (iter.next(); ! iter.eof(); iter.next())
+				assertEquals(wideRecord(n++), t.input(iter.keyadr()));
+			assertEquals(200, n);
+		}
+		t.ck_complete();
+	}
+
+	@Test
+	public void parallel_btree_update_duplicate() {
+		makeWideTable();
+		Transaction t1 = db.updateTransaction();
+		Transaction t2 = db.updateTransaction();
+		t1.addRecord("wide", wideRecord(150));
+		t1.ck_complete();
+		for (int i = 0; i < 200; ++i)
+			t2.addRecord("wide", wideRecord(i));
+		assertThat(t2.complete(), containsString("duplicate key"));
+		assertEquals(1, getNrecords("wide"));
+	}
+
+	private void makeWideTable() {
+		db.createTable("wide")
+			.addColumn("a")
+			.addColumn("b")
+			.addColumn("c")
+			.addColumn("d")
+			.addColumn("e")
+			.addIndex("a", true, false, "", "", 0)
+			.addIndex("b", false, false, "", "", 0)
+			.addIndex("c", false, false, "", "", 0)
+			.addIndex("d", false, false, "", "", 0)
+			.addIndex("e", false, false, "", "", 0)
+			.finish();
+	}
+
+	private static Record wideRecord(int i) {
+		return new RecordBuilder()
+				.add(i).add(i).add(i).add(i).add(i).build();
+	}
+
 	@After
 	public void check_all_gone() {
 		db.checkTransEmpty();
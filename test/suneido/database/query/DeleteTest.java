@@ -5,9 +5,11 @@
 package suneido.database.query;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import suneido.database.immudb.IndexIter;
 import suneido.database.immudb.Transaction;
 
 public class DeleteTest extends TestBase {
@@ -39,4 +41,18 @@ public class DeleteTest extends TestBase {
 		assertEquals(90, get("test").size());
 	}
 
+	@Test
+	public void delete_key_only() {
+		makeTable(10);
+
+		// rows come from the index keys, delete has to read the data
+		assertEquals(10, req("delete test project a"));
+		assertEquals(0, get("test").size());
+		Transaction t = db.readTransaction();
+		IndexIter iter = t.iter(t.getTable("test").num(), "b,a");
+		iter.next();
+		assertTrue(iter.eof());
+		t.ck_complete();
+	}
+
 }
@@ -7,6 +7,8 @@ package suneido.database.query;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Collections;
@@ -19,7 +21,9 @@ import org.junit.Test;
 import suneido.SuDate;
 import suneido.database.immudb.Record;
 import suneido.database.immudb.RecordBuilder;
+import suneido.database.query.expr.CompiledExpr;
 import suneido.database.query.expr.Expr;
+import suneido.database.query.expr.ExprCompiler;
 import suneido.runtime.Ops;
 
 public class ExprTest {
@@ -102,8 +106,7 @@ public class ExprTest {
 	private Header hdr;
 	private Row row;
 
-	@Test
-	public void eval() {
+	private void makeRow() {
 		hdr = new Header(asList(asList("a"), asList("a", "b", "c", "d", "e", "s")),
 				asList("a", "b", "c", "d", "e", "s"));
 		Record key = new RecordBuilder().add(1).build();
@@ -111,6 +114,11 @@ public class ExprTest {
 				add(SuDate.fromLiteral("#20081216.153244828")).
 				add("hello").build();
 		row = new Row(key, rec);
+	}
+
+	@Test
+	public void eval() {
+		makeRow();
 		eval("a + 10", "11");
 		eval("a + -1", "0");
 		eval("10 - b", "8");
@@ -138,6 +146,58 @@ public class ExprTest {
 		assertEquals(e.toString(), result, Ops.display(e.eval(hdr, row)));
 	}
 
+	@Test
+	public void compiled_eval() {
+		makeRow();
+		compiled("a + 10", "11");
+		compiled("d $ a", "'41'");
+		compiled("d % 3", "1");
+		compiled("a + b = c", "true");
+		compiled("b isnt 2", "false");
+		compiled("9 > d", "true");
+		compiled("b > a", "true");
+		compiled("e < #20081216.155544828", "true");
+		compiled("s[-1] is 'o'", "true");
+		compiled("-a", "-1");
+		compiled("not (a is 1)", "false");
+		compiled("a is 1 and b is 2", "true");
+		compiled("a is 1 and b is 3", "false");
+		compiled("a is 2 or d in (3,4,5)", "true");
+		compiled("a > b or s < 'a'", "false");
+		compiled("a is 1 ? s : b", "'hello'");
+		compiled("a is 2 ? s : b", "2");
+		compiled("a + b > c ? 'x' : s $ 'y'", "'helloy'");
+		// raw comparison of packed values
+		for (String s : new String[] { "b = 2", "b < 2", "b <= 2", "c > 2",
+				"c >= 4", "s isnt 'hello'" }) {
+			Expr e = CompileQuery.expr(s);
+			assertTrue(e.isTerm(hdr.fields()));
+			assertEquals(s, e.eval(hdr, row),
+					ExprCompiler.compile(e, hdr).eval(hdr, row));
+		}
+	}
+	@Test
+	public void compiled_class_shared_by_shape() {
+		makeRow();
+		CompiledExpr x = ExprCompiler.compile(CompileQuery.expr("a + 10 > b"), hdr);
+		CompiledExpr y = ExprCompiler.compile(CompileQuery.expr("c + 1 > d"), hdr);
+		CompiledExpr z = ExprCompiler.compile(CompileQuery.expr("a + 10 < b"), hdr);
+		assertSame(x.getClass(), y.getClass());
+		assertNotSame(x.getClass(), z.getClass());
+		assertEquals(true, x.eval(hdr, row));
+		assertEquals(false, y.eval(hdr, row));
+		assertEquals(false, z.eval(hdr, row));
+	}
+
+	private void compiled(String expr, String result) {
+		Expr e = CompileQuery.expr(expr);
+		CompiledExpr c = ExprCompiler.compile(e, hdr);
+		assertEquals(expr, result, Ops.display(c.eval(hdr, row)));
+		// different header is interpreted
+		Header hdr2 = new Header(hdr.flds, hdr.cols);
+		assertEquals(expr, result, Ops.display(c.eval(hdr2, row)));
+	}
+
 	private final List<String> from = asList("x", "y", "z");
 	private final List<String> to = asList("xx", "yy", "zz");
 
@@ -0,0 +1,75 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.query;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+import suneido.database.immudb.Record;
+import suneido.database.immudb.RecordBuilder;
+import suneido.database.immudb.RecordStore;
+import suneido.util.BlockList;
+
+public class ExternalSortTest {
+	private static final long LIMIT = ExternalSort.memoryLimit;
+
+	@After
+	public void restore() {
+		ExternalSort.memoryLimit = LIMIT;
+	}
+
+	@Test
+	public void in_memory() {
+		List<Record> keys = keys(1000);
+		ExternalSort sorter = sort(keys);
+		assertThat(sorter.spilled(), equalTo(false));
+		check(sorter, keys);
+	}
+
+	@Test
+	public void spilled() {
+		ExternalSort.memoryLimit = 16 * 1024;
+		List<Record> keys = keys(50_000);
+		ExternalSort sorter = sort(keys);
+		assertThat(sorter.spilled(), equalTo(true));
+		check(sorter, keys);
+		sorter.close();
+	}
+
+	private static List<Record> keys(int n) {
+		Random rand = new Random(123);
+		List<Record> keys = new ArrayList<>();
+		for (int i = 0; i < n; ++i)
+			keys.add(new RecordBuilder()
+					.add("key" + rand.nextInt(n / 10)).add(i).build());
+		return keys;
+	}
+
+	private static ExternalSort sort(List<Record> keys) {
+		ExternalSort sorter = new ExternalSort();
+		for (Record key : keys)
+			sorter.add(key);
+		sorter.sort();
+		return sorter;
+	}
+
+	private static void check(ExternalSort sorter, List<Record> keys) {
+		Collections.sort(keys);
+		RecordStore stor = sorter.stor();
+		BlockList index = sorter.index();
+		assertThat(index.size(), equalTo(keys.size()));
+		for (int i = 0; i < keys.size(); ++i)
+			assertThat(stor.get(index.get(i)), equalTo(keys.get(i)));
+	}
+
+}
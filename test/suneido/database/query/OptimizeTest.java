@@ -153,10 +153,8 @@ public class OptimizeTest extends TestBase {
 			"(inven^(item) TIMES customer^(id))");
 
 		test1("(customer times inven) join trans",
-			"((customer^(id) TIMES inven^(item)) JOIN 1:n on (id,item) " +
-				"trans^(date,item,id) TEMPINDEX(id,item))",
-			"((customer^(id) TIMES inven^(item)) JOIN 1:n on (id,item) " +
-				"trans^(item) TEMPINDEX(id,item))");
+			"(trans^(item) JOIN-HASH n:1 on (id,item) " +
+				"(customer^(id) TIMES inven^(item)))");
 
 		test1("hist join customer",
 			"(hist^(date,item,id) JOIN n:1 on (id) customer^(id))",
@@ -173,19 +171,16 @@ public class OptimizeTest extends TestBase {
 			"(co^(tnum) JOIN 1:1 on (tnum) task^(tnum))");
 
 		test1("(trans union trans) join (inven union inven)",
-			"((trans^(date,item,id) " +
-				"UNION-MERGE^(date,item,id) trans^(date,item,id)) " +
-				"JOIN n:n on (item) (inven^(item) " +
-				"UNION-MERGE^(item) inven^(item)))");
+			"((inven^(item) UNION-MERGE^(item) inven^(item)) " +
+				"JOIN-HASH n:n on (item) (trans^(date,item,id) " +
+				"UNION-MERGE^(date,item,id) trans^(date,item,id)))");
 
 		test1("customer join alias",
 			"(alias^(id) JOIN 1:1 on (id) customer^(id))");
 
 		test1("customer join supplier",
-			"(supplier^(city) JOIN n:n on (name,city) customer^(id) " +
-				"TEMPINDEX(name,city))",
-			"(supplier^(supplier) JOIN n:n on (name,city) customer^(id) " +
-				"TEMPINDEX(name,city))");
+			"(supplier^(city) JOIN-HASH n:n on (name,city) customer^(id))",
+			"(supplier^(supplier) JOIN-HASH n:n on (name,city) customer^(id))");
 
 		test1("trans join customer join inven",
 			"((trans^(date,item,id) JOIN n:1 on (id) customer^(id)) " +
@@ -0,0 +1,112 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.query;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import suneido.database.immudb.Transaction;
+import suneido.database.query.Query.Dir;
+
+public class QueryCacheTest extends TestBase {
+
+	@Test
+	public void reuse() {
+		makeDB();
+		String query = "customer where city = 'saskatoon'";
+		Query q = run(query, 2);
+		assertSame(q, run(query, 2));
+		req("insert{id: 'x', name: 'xylo', city: 'saskatoon'} into customer");
+		assertSame(q, run(query, 3));
+	}
+
+	@Test
+	public void schema_change() {
+		makeDB();
+		String query = "customer";
+		Query q = run(query, 4);
+		adm("alter customer create (phone)");
+		assertNotSame(q, run(query, 4));
+	}
+
+	@Test
+	public void not_reusable() {
+		makeDB();
+		String query = "customer sort city";
+		Query q = run(query, 4);
+		assertThat(q.toString().contains("TEMPINDEX"), equalTo(true));
+		assertNotSame(q, run(query, 4));
+	}
+
+	@Test
+	public void view() {
+		makeDB();
+		adm("view custview = customer");
+		Query q = run("custview", 4);
+		assertNotSame(q, run("custview", 4));
+	}
+
+	@Test
+	public void release_drops_iterators() {
+		makeDB();
+		String query = "customer where city = 'saskatoon' join trans";
+		Query q = run(query, 1);
+		List<Query> nodes = new ArrayList<>();
+		nodes(q, nodes);
+		int ntables = 0;
+		for (Query node : nodes)
+			if (node instanceof Table) {
+				assertNull(((Table) node).iter);
+				++ntables;
+			}
+		assertThat(ntables, equalTo(2));
+		Transaction t = db.readTransaction();
+		try {
+			assertSame(q, QueryCache.query(t, serverData, query));
+			for (Query node : nodes)
+				if (node instanceof Select) {
+					assertThat(((Select) node).n_in, equalTo(0));
+					assertThat(((Select) node).n_out, equalTo(0));
+				}
+			q.close();
+		} finally {
+			t.complete();
+		}
+	}
+
+	private static void nodes(Query q, List<Query> nodes) {
+		nodes.add(q);
+		if (q instanceof Query1)
+			nodes(((Query1) q).source, nodes);
+		if (q instanceof Query2)
+			nodes(((Query2) q).source2, nodes);
+	}
+
+	/** gets all the rows from a cached query then releases it */
+	private Query run(String query, int nrows) {
+		Transaction t = db.readTransaction();
+		try {
+			Query q = QueryCache.query(t, serverData, query);
+			List<Row> rows = new ArrayList<>();
+			for (Row row; null != (row = q.get(Dir.NEXT)); )
+				rows.add(row);
+			assertThat(rows.size(), equalTo(nrows));
+			q.close();
+			QueryCache.release(q);
+			return q;
+		} finally {
+			t.complete();
+		}
+	}
+
+}
@@ -4,10 +4,12 @@
 
 package suneido.database.query;
 
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static suneido.database.query.Query.Dir.NEXT;
 
 import java.util.Collections;
@@ -15,6 +17,7 @@ import java.util.List;
 
 import org.junit.Test;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 
 import suneido.database.immudb.Transaction;
@@ -37,6 +40,29 @@ public class QueryTest extends TestBase {
 		}
 	}
 
+	@Test
+	public void key_only() {
+		makeTable(3);
+		key_only("test project a");
+		key_only("test where a > 0 project a");
+		key_only("test where b = 'more stuff'"); // index(b,a) has all the columns
+	}
+
+	private void key_only(String query) {
+		Transaction t = db.readTransaction();
+		try {
+			Query q = CompileQuery.query(t, serverData, query);
+			Header hdr = q.header();
+			Row row = q.get(NEXT);
+			assertTrue(row.firstData().isEmpty()); // data record not read
+			assertThat(row.address(), not(equalTo(0)));
+			assertThat(row.getval(hdr, "a"), equalTo(query.contains("a > 0") ? 1 : 0));
+			t.complete();
+		} finally {
+			t.abortIfNotComplete();
+		}
+	}
+
 	@Test
 	public void tests() {
 		makeDB();
@@ -175,6 +201,17 @@ public class QueryTest extends TestBase {
 			"'mouse'	2	'e'	200	960204\n" +
 			"'mouse'	2	'c'	200	970101\n" +
 			"'pencil'	7	''	''	''\n");
+		test1("(customer times inven) join trans", // hash join
+			"item	id	cost	date	name	city	qty\n" +
+			"'disk'	'a'	100	970101	'axon'	'saskatoon'	5\n" +
+			"'mouse'	'e'	200	960204	'emerald'	'vancouver'	2\n" +
+			"'mouse'	'c'	200	970101	'calac'	'calgary'	2\n");
+		test1("trans leftjoin (customer times inven)",
+			"item	id	cost	date	name	city	qty\n" +
+			"'disk'	'a'	100	970101	'axon'	'saskatoon'	5\n" +
+			"'eraser'	'c'	150	970201	''	''	''\n" +
+			"'mouse'	'e'	200	960204	'emerald'	'vancouver'	2\n" +
+			"'mouse'	'c'	200	970101	'calac'	'calgary'	2\n");
 		test1("customer leftjoin hist2",
 			"id	name	city	date	item	cost\n" +
 			"'a'	'axon'	'saskatoon'	970101	'disk'	100\n" +
@@ -267,6 +304,36 @@ public class QueryTest extends TestBase {
 				"'i'	'intercon'	'saskatoon'\n");
 	}
 
+	@Test
+	public void tempindex_spilled() {
+		makeDB();
+		String big = Strings.repeat("x", 9000); // too big to add to the key
+		for (String query : new String[] {
+				"hist join customer sort city, cost",
+				"hist join customer extend x = name $ '!' sort city, x",
+				"hist join customer extend x = '" + big + "' $ name sort city, cost" }) {
+			String result = result(query);
+			long limit = ExternalSort.memoryLimit;
+			ExternalSort.memoryLimit = 100;
+			try {
+				test1(query, result);
+			} finally {
+				ExternalSort.memoryLimit = limit;
+			}
+		}
+	}
+
+	private String result(String query) {
+		Transaction t = db.readTransaction();
+		try {
+			Query q = CompileQuery.query(t, serverData, query);
+			assertThat(q.toString(), containsString("TEMPINDEX"));
+			return (String) execute(Dir.NEXT, q);
+		} finally {
+			t.complete();
+		}
+	}
+
 	private void test1(String query, String result) {
 		one_way(Dir.NEXT, query, result);
 		one_way(Dir.PREV, query, result);
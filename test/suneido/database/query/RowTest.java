@@ -12,6 +12,7 @@ import java.util.Iterator;
 
 import org.junit.Test;
 
+import suneido.database.immudb.Dbpkg;
 import suneido.database.immudb.Record;
 import suneido.database.immudb.RecordBuilder;
 
@@ -44,4 +45,24 @@ public class RowTest {
 		assertFalse(iter.hasNext());
 	}
 
+	@Test
+	public void resolved() {
+		Record rec1 = new RecordBuilder().add(123).build();
+		Record rec2 = new RecordBuilder().add(123).add(456).build();
+		Row row = new Row(rec1, rec2);
+		Header hdr = HeaderTest.makeHeader();
+		Row.Col a = hdr.resolve("a");
+		Row.Col b = hdr.resolve("b");
+		assertEquals(row.getraw(hdr, "a"), row.getraw(a));
+		assertEquals(row.getraw(hdr, "b"), row.getraw(b));
+		assertEquals(row.getval(hdr, "b"), row.getval(b));
+		assertEquals(row.project(hdr, asList("b", "a")),
+				row.project(hdr.resolve(asList("b", "a"))));
+
+		// empty records are skipped the same as find
+		row = new Row(Dbpkg.MIN_RECORD, rec2);
+		assertEquals(rec2.getRaw(0), row.getraw(a));
+		assertEquals(Record.MIN_FIELD, new Row(Dbpkg.MIN_RECORD, Dbpkg.MIN_RECORD).getraw(a));
+	}
+
 }
@@ -8,6 +8,9 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.core.StringStartsWith.startsWith;
 import static org.junit.Assert.assertThat;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
 import suneido.SuObject;
@@ -33,7 +36,8 @@ public class ClientServerTest {
 		TheDbms.set(Dbpkg.testdb()); // local dbms for server, used by Command
 
 		channel = new TestChannel(this::serverHandler);
-		handler = new DbmsServer.DbmsServerHandler(channel, new ServerDataSet());
+		handler = new DbmsServer.DbmsServerHandler(channel, new ServerDataSet(),
+				new RequestScheduler(1));
 
 		DbmsClient dbmsClient = new DbmsClient(channel);
 
@@ -110,6 +114,34 @@ public class ClientServerTest {
 		assertThat(q.get(Dir.NEXT).toString(), startsWith("[1,\"tables\""));
 		t.abort();
 
+		// GETN (read-only transaction query prefetch)
+		t = dbmsClient.transaction(false);
+		q = t.query("columns");
+		List<String> rows = new ArrayList<>();
+		while (null != (row = q.get(Dir.NEXT)))
+			rows.add(row.toString());
+		int n = rows.size();
+		assertThat(n > 10, equalTo(true));
+		assertThat(q.get(Dir.PREV).toString(), equalTo(rows.get(n - 1)));
+		assertThat(q.get(Dir.PREV).toString(), equalTo(rows.get(n - 2)));
+		q.rewind();
+		for (int i = 0; i < 5; ++i)
+			assertThat(q.get(Dir.NEXT).toString(), equalTo(rows.get(i)));
+		assertThat(q.get(Dir.PREV).toString(), equalTo(rows.get(3)));
+		assertThat(q.get(Dir.PREV).toString(), equalTo(rows.get(2)));
+		assertThat(q.get(Dir.NEXT).toString(), equalTo(rows.get(3)));
+		q.close();
+		// change direction after the server hit eof
+		q = t.query("tables");
+		assertThat(q.get(Dir.NEXT).toString(), startsWith("[1,"));
+		assertThat(q.get(Dir.NEXT).toString(), startsWith("[2,"));
+		assertThat(q.get(Dir.NEXT).toString(), startsWith("[3,"));
+		assertThat(q.get(Dir.PREV).toString(), startsWith("[2,"));
+		assertThat(q.get(Dir.PREV).toString(), startsWith("[1,"));
+		assertThat(q.get(Dir.PREV), equalTo(null));
+		assertThat(q.get(Dir.PREV).toString(), startsWith("[5,"));
+		t.abort();
+
 		// KEYS
 		q = dbmsClient.cursor("columns");
 		assertThat(q.keys().toString(), equalTo("[[table, column]]"));
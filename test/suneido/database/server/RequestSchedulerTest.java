@@ -0,0 +1,40 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.database.server;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class RequestSchedulerTest {
+
+	@Test
+	public void requests_wait_for_thread() {
+		RequestScheduler rs = new RequestScheduler(1);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(2);
+		rs.execute(() -> {
+			started.countDown();
+			Uninterruptibles.awaitUninterruptibly(release);
+			done.countDown();
+		});
+		Uninterruptibles.awaitUninterruptibly(started);
+		rs.execute(done::countDown);
+		assertThat(rs.threads(), equalTo(1));
+		assertThat(rs.active(), equalTo(1));
+		assertThat(rs.queued(), equalTo(1));
+		release.countDown();
+		Uninterruptibles.awaitUninterruptibly(done);
+		assertThat(rs.queued(), equalTo(0));
+		assertThat(rs.maxQueued(), equalTo(1));
+	}
+
+}
@@ -0,0 +1,43 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.runtime;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import suneido.TheDbms;
+import suneido.database.immudb.Database;
+import suneido.database.immudb.Dbpkg;
+import suneido.database.immudb.RecordBuilder;
+import suneido.database.immudb.Transaction;
+
+public class ContextLayeredTest {
+
+	@Test
+	public void reuse_compiled() {
+		Database db = Dbpkg.testdb();
+		TheDbms.set(db);
+		TheDbms.dbms().admin("create stdlib (name, text, group) key(name,group)");
+		Transaction t = db.updateTransaction();
+		t.addRecord("stdlib", new RecordBuilder()
+				.add("CtxTest").add("class { X: 1 }").add(-1).build());
+		t.ck_complete();
+
+		ContextLayered context = new ContextLayered(new Contexts());
+		Object x = context.get("CtxTest");
+		context.clearAll(); // e.g. Use
+		assertSame(x, context.get("CtxTest"));
+
+		// different source is compiled
+		context.override("stdlib", "CtxTest", "class { X: 2 }");
+		Object y = context.get("CtxTest");
+		assertNotSame(x, y);
+		context.overrideClear();
+		assertSame(x, context.get("CtxTest"));
+	}
+
+}
@@ -0,0 +1,83 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.runtime;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class ContextTest {
+	private final AtomicInteger nfetch = new AtomicInteger();
+	private final CountDownLatch fetching = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private final Context context = new Context(new Contexts()) {
+		@Override
+		protected Object fetch(String name) {
+			nfetch.incrementAndGet();
+			switch (name) {
+			case "Slow":
+				fetching.countDown();
+				Uninterruptibles.awaitUninterruptibly(release);
+				return "slow";
+			case "Self":
+				set("Self", "partial");
+				return "self:" + get("Self");
+			case "Missing":
+				return null;
+			default:
+				return name.toLowerCase();
+			}
+		}
+	};
+
+	@Test
+	public void cache() {
+		assertThat(context.get("Foo"), equalTo("foo"));
+		assertThat(context.get(context.slotForName("Foo")), equalTo("foo"));
+		assertThat(nfetch.get(), equalTo(1));
+		context.clear("Foo");
+		assertThat(context.get("Foo"), equalTo("foo"));
+		assertThat(nfetch.get(), equalTo(2));
+	}
+
+	@Test
+	public void missing() {
+		assertThat(context.tryget("Missing"), nullValue());
+		assertThat(context.tryget("Missing"), nullValue());
+		assertThat(nfetch.get(), equalTo(1));
+	}
+
+	@Test
+	public void recursive() {
+		assertThat(context.get("Self"), equalTo("self:partial"));
+	}
+
+	@Test
+	public void concurrent() throws InterruptedException {
+		Object[] result = new Object[2];
+		Thread t1 = new Thread(() -> result[0] = context.get("Slow"));
+		Thread t2 = new Thread(() -> result[1] = context.get("Slow"));
+		t1.start();
+		Uninterruptibles.awaitUninterruptibly(fetching);
+		t2.start();
+		// other names are not blocked by the slow fetch
+		assertThat(context.get("Other"), equalTo("other"));
+		release.countDown();
+		t1.join();
+		t2.join();
+		assertThat(result[0], equalTo("slow"));
+		assertThat(result[1], equalTo("slow"));
+		assertThat(nfetch.get(), equalTo(2)); // Slow and Other
+	}
+
+}
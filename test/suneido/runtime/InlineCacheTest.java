@@ -0,0 +1,55 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.runtime;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static suneido.compiler.Compiler.compile;
+import static suneido.compiler.Compiler.eval;
+
+import org.junit.Test;
+
+import suneido.SuValue;
+import suneido.Suneido;
+
+public class InlineCacheTest {
+
+	@Test
+	public void polymorphic() {
+		SuValue f = (SuValue) compile("Test", "function (x) { x.Size() }");
+		Object[] values = { "abc", eval("#(1, 2)"), eval("[a: 1]"),
+				"", eval("#()"), eval("Object(1, 2, 3)") };
+		int[] sizes = { 3, 2, 1, 0, 0, 3 };
+		for (int rep = 0; rep < 3; ++rep)
+			for (int i = 0; i < values.length; ++i)
+				assertThat(f.call1(values[i]), equalTo(sizes[i]));
+	}
+
+	@Test
+	public void megamorphic() {
+		SuValue f = (SuValue) compile("Test", "function (x) { x.F() }");
+		int n = 2 * InlineCache.MAX_DEPTH;
+		Object[] instances = new Object[n];
+		for (int i = 0; i < n; ++i)
+			instances[i] = eval("(class { F() { " + i + " } })()");
+		for (int rep = 0; rep < 3; ++rep)
+			for (int i = 0; i < n; ++i)
+				assertThat(f.call1(instances[i]), equalTo(i));
+	}
+
+	@Test
+	public void invalidate() {
+		Suneido.context.set("IcA", compile("IcA", "class { F() { 1 } }"));
+		Suneido.context.set("IcB", compile("IcB", "class : IcA { }"));
+		Object b = eval("IcB()");
+		SuValue f = (SuValue) compile("Test", "function (x) { x.F() }");
+		assertThat(f.call1(b), equalTo(1));
+		assertThat(f.call1(b), equalTo(1));
+		// same instance and class, but the base class has changed
+		Suneido.context.set("IcA", compile("IcA", "class { F() { 2 } }"));
+		assertThat(f.call1(b), equalTo(2));
+	}
+
+}
@@ -5,9 +5,15 @@
 package suneido.runtime;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import suneido.SuObject;
+
 /**
  * Test for {@link SuInstance}.
  *
@@ -29,4 +35,68 @@ public class SuInstanceTest {
 		assertEquals(a1, a2);
 		assertEquals(a1.hashCode(), a2.hashCode());
 	}
+
+	@Test
+	public void testMembers() {
+		final SuClass c = new SuClass("", "c", null, null);
+		SuInstance x = new SuInstance(c);
+		SuInstance y = new SuInstance(c);
+		x.put("a", 1);
+		x.put("b", 2);
+		y.put("a", 1);
+		assertNotEquals(x, y);
+		y.put("b", 2);
+		assertEquals(x, y);
+		x.put("a", 11);
+		assertEquals(11, x.get("a"));
+		assertEquals(2, SuInstance.Size(x));
+		assertEquals(SuObject.of("a", "b"), SuInstance.Members(x, false));
+
+		SuInstance z = SuInstance.Copy(x);
+		z.put("c", 3);
+		assertFalse(SuInstance.MemberQ(x, "c"));
+		assertEquals(3, z.get("c"));
+	}
+
+	@Test
+	public void testDelete() {
+		final SuClass c = new SuClass("", "c", null, null);
+		SuInstance x = new SuInstance(c);
+		x.put("a", 1);
+		x.put("b", 2);
+		SuInstance y = SuInstance.Copy(x);
+		SuInstance.Delete(x, "a", FunctionSpec.NA); // switches to map
+		assertFalse(SuInstance.MemberQ(x, "a"));
+		assertEquals(2, x.get("b"));
+		assertEquals(1, y.get("a"));
+		y.put("c", 3);
+		SuInstance.Delete(y, "c", FunctionSpec.NA);
+		assertEquals(1, y.get("a"));
+		x.put("a", 1);
+		assertEquals(x, y); // map vs shape
+		SuInstance.Delete(y, FunctionSpec.NA, true);
+		assertEquals(0, SuInstance.Size(y));
+		assertNull(SuInstance.GetDefault(y, "a", null));
+	}
+
+	@Test
+	public void testManyMembers() {
+		final SuClass c = new SuClass("", "c", null, null);
+		SuInstance x = new SuInstance(c);
+		int n = 2 * Shape.MAX_SLOTS;
+		for (int i = 0; i < n; ++i)
+			x.put("m" + i, i);
+		assertEquals(n, SuInstance.Size(x));
+		for (int i = 0; i < n; ++i)
+			assertEquals(i, x.get("m" + i));
+		// different orders of adding members
+		for (int i = 0; i < 2 * Shape.MAX_TRANSITIONS; ++i) {
+			SuInstance y = new SuInstance(c);
+			y.put("first" + i, i);
+			y.put("a", 1);
+			assertEquals(i, y.get("first" + i));
+			assertTrue(SuInstance.MemberQ(y, "a"));
+		}
+	}
+
 }
@@ -0,0 +1,110 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.runtime.builtin;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+
+import suneido.SuException;
+import suneido.SuValue;
+import suneido.util.FileUtils;
+
+public class LuceneTest {
+	private final File dir = FileUtils.tempfile();
+
+	@Before
+	public void setup() {
+		dir.delete(); // tempfile creates a file
+	}
+
+	@After
+	public void teardown() throws Exception {
+		LuceneIndexes.closeIdle(0);
+		if (dir.exists())
+			MoreFiles.deleteRecursively(dir.toPath(),
+					RecursiveDeleteOption.ALLOW_INSECURE);
+	}
+
+	@Test
+	public void update_then_search() {
+		assertEquals(false, Lucene.AvailableQ(null, dir.toString()));
+		update(true, "Insert", "now", "now is the time for all good men");
+		assertEquals(true, Lucene.AvailableQ(null, dir.toString()));
+		assertEquals(List.of("now"), search("good"));
+		update(false, "Insert", "fox", "the quick brown fox");
+		assertEquals(List.of("fox"), search("quick"));
+		assertEquals(List.of("now"), search("good"));
+		update(false, "Remove", "now", null);
+		assertEquals(List.of(), search("good"));
+		// searchers reopen after the index is closed
+		LuceneIndexes.closeIdle(0);
+		assertEquals(List.of("fox"), search("fox"));
+		// create replaces the existing contents
+		update(true, "Insert", "x", "good dog");
+		assertEquals(List.of(), search("fox"));
+		assertEquals(List.of("x"), search("good"));
+	}
+
+	@Test
+	public void overlapping_updates() {
+		update(true, "Insert", "a", "first document");
+		Lucene.Update(null, dir.toString(), new SuValue() {
+			@Override
+			public Object call1(Object u) {
+				Lucene.Updater.Insert(u, "b", "second document");
+				try {
+					update(true, "Insert", "c", "third document");
+					fail();
+				} catch (SuException e) {
+					assertThat(e.getMessage(), containsString("already being updated"));
+				}
+				return null;
+			}
+		}, false);
+		assertEquals(List.of("a", "b"), search("document"));
+		// the failed update didn't leave the index locked
+		update(false, "Insert", "d", "fourth document");
+		assertEquals(3, search("document").size());
+	}
+
+	private void update(boolean create, String op, String key, String text) {
+		Lucene.Update(null, dir.toString(), new SuValue() {
+			@Override
+			public Object call1(Object u) {
+				if (op.equals("Insert"))
+					Lucene.Updater.Insert(u, key, text);
+				else
+					Lucene.Updater.Remove(u, key);
+				return null;
+			}
+		}, create);
+	}
+
+	private List<Object> search(String query) {
+		List<Object> keys = new ArrayList<>();
+		Lucene.Search(null, dir.toString(), query, 10, new SuValue() {
+			@Override
+			public Object call2(Object key, Object fragments) {
+				keys.add(key);
+				return null;
+			}
+		});
+		return keys;
+	}
+
+}
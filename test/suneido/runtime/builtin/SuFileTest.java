@@ -0,0 +1,125 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.runtime.builtin;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+import suneido.util.Dnum;
+import suneido.util.FileUtils;
+import suneido.util.Util;
+
+public class SuFileTest {
+	private final String filename = FileUtils.tempfile().toString();
+	private final int bufferSize = SuFile.BUFFER_SIZE;
+	private final long mapMin = SuFile.MAP_MIN;
+	private final int mapSize = SuFile.MAP_SIZE;
+
+	@After
+	public void teardown() {
+		SuFile.BUFFER_SIZE = bufferSize;
+		SuFile.MAP_MIN = mapMin;
+		SuFile.MAP_SIZE = mapSize;
+		new File(filename).delete();
+	}
+
+	@Test
+	public void readline() {
+		String longline = Strings.repeat("x", Util.MAX_LINE + 10);
+		put("one\r\n\ntwo\r\r\n" + longline + "\nlast");
+		for (int size : new int[] { 3, 4096 }) {
+			SuFile.BUFFER_SIZE = size;
+			SuFile f = new SuFile(filename, "r");
+			assertEquals("one", SuFile.Readline(f));
+			assertEquals("", SuFile.Readline(f));
+			assertEquals("two", SuFile.Readline(f));
+			assertEquals(longline.substring(0, Util.MAX_LINE),
+					SuFile.Readline(f));
+			assertEquals("last", SuFile.Readline(f));
+			assertEquals(false, SuFile.Readline(f));
+			SuFile.Close(f);
+		}
+	}
+
+	@Test
+	public void read_seek_tell() {
+		put("hello world\nbye\n");
+		SuFile.BUFFER_SIZE = 4;
+		SuFile f = new SuFile(filename, "r");
+		assertEquals("hello", SuFile.Read(f, 5));
+		assertEquals(Dnum.from(5), SuFile.Tell(f));
+		assertEquals(" world", SuFile.Readline(f));
+		SuFile.Seek(f, -4, "end");
+		assertEquals("bye\n", SuFile.Read(f, Integer.MAX_VALUE));
+		assertEquals(false, SuFile.Read(f, 1));
+		SuFile.Seek(f, 6, "set");
+		assertEquals("wor", SuFile.Read(f, 3));
+		SuFile.Seek(f, -2, "cur");
+		assertEquals("orld", SuFile.Readline(f));
+		SuFile.Close(f);
+	}
+
+	@Test
+	public void write_then_read() {
+		SuFile f = new SuFile(filename, "w");
+		SuFile.Writeline(f, "abc");
+		SuFile.Seek(f, 0, "set");
+		assertEquals("abc", SuFile.Readline(f));
+		SuFile.Seek(f, 1, "set");
+		SuFile.Write(f, "X");
+		SuFile.Seek(f, 0, "set");
+		assertEquals("aXc", SuFile.Readline(f));
+		assertEquals(false, SuFile.Readline(f));
+		SuFile.Close(f);
+	}
+
+	@Test
+	public void append() {
+		put("first\n");
+		SuFile a = new SuFile(filename, "a");
+		SuFile b = new SuFile(filename, "a");
+		SuFile.Writeline(a, "a1");
+		SuFile.Writeline(b, "b1");
+		SuFile.Writeline(a, "a2");
+		SuFile.Close(a);
+		SuFile.Close(b);
+		assertEquals("first\na1\r\nb1\r\na2\r\n", get());
+	}
+
+	@Test
+	public void mapped() {
+		SuFile.MAP_MIN = 1;
+		SuFile.MAP_SIZE = 5;
+		put("one\ntwo\nthree\n");
+		SuFile f = new SuFile(filename, "r");
+		assertEquals("one", SuFile.Readline(f));
+		assertEquals("two", SuFile.Readline(f));
+		assertEquals("three", SuFile.Readline(f));
+		assertEquals(false, SuFile.Readline(f));
+		SuFile.Seek(f, 2, "set");
+		assertEquals("e\ntwo\nt", SuFile.Read(f, 7));
+		SuFile.Close(f);
+	}
+
+	private void put(String s) {
+		SuFile f = new SuFile(filename, "w");
+		SuFile.Write(f, s);
+		SuFile.Close(f);
+	}
+
+	private String get() {
+		SuFile f = new SuFile(filename, "r");
+		Object s = SuFile.Read(f, Integer.MAX_VALUE);
+		SuFile.Close(f);
+		return (String) s;
+	}
+
+}
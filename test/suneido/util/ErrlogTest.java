@@ -0,0 +1,62 @@
+/* Copyright 2019 (c) Suneido Software Corp. All rights reserved.
+ * Licensed under GPLv2.
+ */
+
+package suneido.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ErrlogTest {
+	private final String filename = FileUtils.tempfile().toString();
+	private String prevFilename;
+
+	@Before
+	public void setup() {
+		Errlog.flush();
+		prevFilename = Errlog.filename;
+		Errlog.filename = filename;
+	}
+
+	@After
+	public void teardown() {
+		Errlog.flush();
+		Errlog.filename = prevFilename;
+		new File(filename).delete();
+	}
+
+	@Test
+	public void repeats() throws IOException {
+		for (int i = 0; i < 5; ++i)
+			Errlog.warn("same");
+		Errlog.warn("other");
+		Errlog.flush();
+		List<String> lines = Files.readAllLines(new File(filename).toPath());
+		Pattern repeated = Pattern.compile("\\(last message repeated (\\d+) times\\)");
+		int same = 0;
+		int other = 0;
+		for (String line : lines) {
+			Matcher m = repeated.matcher(line);
+			if (line.endsWith("WARNING: same"))
+				++same;
+			else if (m.matches())
+				same += Integer.parseInt(m.group(1));
+			else if (line.endsWith("WARNING: other"))
+				++other;
+		}
+		assertThat(same, equalTo(5));
+		assertThat(other, equalTo(1));
+	}
+
+}
@@ -12,6 +12,8 @@ import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import com.google.common.base.Strings;
+
 public class RegexTest {
 
 	@Test
@@ -323,6 +325,20 @@ public class RegexTest {
 		match("foo123", "([a-z]+)([0-9]+)", "foo123", "foo", "123");
 		match("hello there world", "(\\w+ )+", "hello there ", "there ");
 		match("hello world", "hello(x?)", "hello");
+		match(" ba", "(.)*(b?).", " ba", "b", "");
+		match("abab", "(ab)\\1", "abab", "ab"); // backtracking
+	}
+
+	@Test
+	public void linear_time() {
+		String s = Strings.repeat("a", 10000);
+		nomatch(s, "(a*)*b");
+		nomatch(s, "(a|a)*b");
+		nomatch(s, "(a|aa)+$x");
+		amatch(s, "(a*)*");
+		lastMatch(s, "(a+)+b?$", 9999);
+		lastMatch(s, "(a*)*b", -1);
+		lastMatch(s, "(a|aa)+$x", -1);
 	}
 
 	void match(String s, String rx, String... exp) {
@@ -339,6 +355,10 @@ public class RegexTest {
 		lastMatch("hello", "\\w", 4);
 		lastMatch("hello world", "o", 7);
 		lastMatch("hello world", "\\<\\w+", 6);
+		lastMatch("hello world", "l+", 9);
+		lastMatch("hello world", "x", -1);
+		lastMatch("hello", "", 5);
+		lastMatch("hello", "^", 0);
 	}
 
 	void lastMatch(String s, String rx, int expected) {